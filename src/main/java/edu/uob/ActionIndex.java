@@ -0,0 +1,100 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+* Trigger keyphrase to candidate actions, built once when the actions file is loaded.
+*
+* <p>Triggers and subjects are resolved to {@link Vocabulary} IDs here, so matching a
+* command is an array lookup for the trigger and a bit test per object. Candidates keep
+* the order of the actions file, so ambiguity messages list them the same way a full
+* scan would.
+*/
+public class ActionIndex {
+    private final List<List<Candidate>> candidatesByTrigger = new ArrayList<>();
+
+    //an action with its subjects as a set of vocabulary IDs
+    private static final class Candidate {
+        private final GameAction action;
+        private final BitSet subjectIds = new BitSet();
+
+        Candidate(GameAction action, Vocabulary vocabulary) {
+            this.action = action;
+            for (String subject : action.getSubjects()) {
+                int id = vocabulary.id(subject);
+                if (id != Vocabulary.UNKNOWN) {
+                    subjectIds.set(id);
+                }
+            }
+        }
+
+        boolean hasSubjects(int[] objectIds) {
+            for (int id : objectIds) {
+                if (!subjectIds.get(id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public ActionIndex(List<GameAction> actions, Vocabulary vocabulary) {
+        for (int id = 0; id < vocabulary.size(); id++) {
+            candidatesByTrigger.add(Collections.emptyList());
+        }
+        for (GameAction action : actions) {
+            Candidate candidate = new Candidate(action, vocabulary);
+            for (String trigger : action.getTriggers()) {
+                int id = vocabulary.id(trigger);
+                if (id == Vocabulary.UNKNOWN) {
+                    continue;
+                }
+                if (candidatesByTrigger.get(id).isEmpty()) {
+                    candidatesByTrigger.set(id, new ArrayList<>());
+                }
+                List<Candidate> candidates = candidatesByTrigger.get(id);
+                //an action listing the same trigger twice is still one candidate
+                if (candidates.isEmpty() || candidates.get(candidates.size() - 1).action != action) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+    }
+
+    private List<Candidate> candidatesFor(int triggerId) {
+        if (triggerId < 0 || triggerId >= candidatesByTrigger.size()) {
+            return Collections.emptyList();
+        }
+        return candidatesByTrigger.get(triggerId);
+    }
+
+    //every action with this trigger, empty if there is none
+    public List<GameAction> candidates(int triggerId) {
+        List<GameAction> actions = new ArrayList<>();
+        for (Candidate candidate : this.candidatesFor(triggerId)) {
+            actions.add(candidate.action);
+        }
+        return actions;
+    }
+
+    //actions whose subjects include every object named in the command
+    public List<GameAction> match(int triggerId, int[] objectIds) {
+        return this.match(triggerId, objectIds, new ArrayList<>());
+    }
+
+    //same, but into a caller-owned list that is cleared first
+    public List<GameAction> match(int triggerId, int[] objectIds, List<GameAction> matchedActions) {
+        matchedActions.clear();
+        List<Candidate> candidates = this.candidatesFor(triggerId);
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate.hasSubjects(objectIds)) {
+                matchedActions.add(candidate.action);
+            }
+        }
+        return matchedActions;
+    }
+}
@@ -0,0 +1,183 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.uob.CommandProcessor.PlayerDeathException;
+
+/**
+* A {@link GameAction} compiled once at load time into typed steps.
+*
+* <p>Compiling decides what every consumed and produced name is (health, a location that
+* opens a path, or an entity) and resolves entity IDs and locations up front, so running
+* the plan is a plain loop over the steps: consumed entries first, then produced ones,
+* in the order of the actions file.
+*/
+public final class ActionPlan {
+
+    private interface Step {
+        void run(Player player, Health health);
+    }
+
+    private final Step[] steps;
+
+    private ActionPlan(List<Step> steps) {
+        this.steps = steps.toArray(new Step[0]);
+    }
+
+    public static ActionPlan compile(GameAction action, Map<String, GameEntity.Location> locations) {
+        List<Step> steps = new ArrayList<>();
+        for (String consumed : action.getConsumed()) {
+            if ("health".equals(consumed)) {
+                steps.add(new HealthStep(-1));
+            } else {
+                steps.add(new ConsumeStep(consumed));
+            }
+        }
+        for (String produced : action.getProduced()) {
+            GameEntity.Location newLocation = locations.get(produced);
+            if ("health".equalsIgnoreCase(produced)) {
+                steps.add(new HealthStep(1));
+            } else if (newLocation != null) {
+                steps.add(new OpenPathStep(newLocation));
+            } else {
+                steps.add(new ProduceItemStep(produced));
+            }
+        }
+        return new ActionPlan(steps);
+    }
+
+    //PlayerDeathException ends the plan early, like the interpreted version did
+    public void execute(Player player, Health health) {
+        for (Step step : steps) {
+            step.run(player, health);
+        }
+    }
+
+    public int size() {
+        return steps.length;
+    }
+
+    private static final class HealthStep implements Step {
+        private final int delta;
+
+        HealthStep(int delta) {
+            this.delta = delta;
+        }
+
+        @Override
+        public void run(Player player, Health health) {
+            int beforeHealth = health.getHealth(player);
+            String healthResult = health.modifyHealth(player, delta);
+            int afterHealth = health.getHealth(player);
+
+            Log.debug("[Debug] health: %s (before: %d, after: %d)", healthResult, beforeHealth, afterHealth);
+
+            //detects player death and quickly stops
+            if (delta < 0 && "You're dead".equals(healthResult)) {
+                Health.handlePlayerDeath(player, health);
+                throw new PlayerDeathException(healthResult);
+            }
+        }
+    }
+
+    //taken from the backpack if it is there, otherwise from the location's items, furniture or characters;
+    //items and furniture must match the name exactly, characters in any case, as before plans
+    private static final class ConsumeStep implements Step {
+        private final String name;
+        private final int entityId;
+
+        ConsumeStep(String name) {
+            this.name = name;
+            this.entityId = EntityIds.of(name);
+        }
+
+        @Override
+        public void run(Player player, Health health) {
+            GameEntity.Location location = player.getLocation();
+            //the presence check is by ID and ignores case, removal then goes by exact name like at the location
+            if (player.getPackPresence().contains(entityId) && ActionPlan.discardFromPack(player, name)) {
+                Log.debug("[Debug] Removed consumables from backpack: %s", name);
+            } else if (ActionPlan.discard(location.getItems().takeFirst(name))) {
+                Log.debug("[Debug] Removed item from location: %s", name);
+            } else if (ActionPlan.discard(location.getFurniture().takeFirst(name))) {
+                Log.debug("[Debug] Removed furniture from location: %s", name);
+            } else if (ActionPlan.removeEntity(location.getCharacters(), entityId, false)) {
+                Log.debug("[Debug] Removed furniture from character: %s", name);
+            } else {
+                Log.error("[Error] Consumables not found: %s", name);
+            }
+        }
+    }
+
+    private static final class OpenPathStep implements Step {
+        private final GameEntity.Location destination;
+
+        OpenPathStep(GameEntity.Location destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        public void run(Player player, Health health) {
+            if (!player.getLocation().getConnectedLocations().contains(destination)) {
+                player.getLocation().addConnectedLocation(destination);
+            } else {
+                Log.debug("[Debug] %s already existed", destination.getName());
+            }
+        }
+    }
+
+    //a fresh item, placed at the location and in the backpack
+    private static final class ProduceItemStep implements Step {
+        private final String name;
+
+        ProduceItemStep(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run(Player player, Health health) {
+            GameEntity.Item newItem = new GameEntity.Item(player.getLocation().getStore(), name, "Generated by action");
+            player.getLocation().addItem(newItem);
+            player.addInPack(newItem);
+        }
+    }
+
+    //consumed entities are gone for good, so their rows can be reused; false if there was none
+    private static boolean discard(GameEntity consumed) {
+        if (consumed == null) {
+            return false;
+        }
+        consumed.discard();
+        return true;
+    }
+
+    //every copy with exactly this name, like Player.removeItem, true if anything was removed
+    private static boolean discardFromPack(Player player, String name) {
+        boolean removed = false;
+        while (ActionPlan.discard(player.takeItem(name))) {
+            removed = true;
+        }
+        return removed;
+    }
+
+    //remove and discard the first (or every) entity with this ID in place, true if anything was removed
+    private static boolean removeEntity(List<GameEntity> entities, int entityId, boolean all) {
+        boolean removed = false;
+        Iterator<GameEntity> iterator = entities.iterator();
+        while (iterator.hasNext()) {
+            GameEntity entity = iterator.next();
+            if (entity.getEntityId() == entityId) {
+                iterator.remove();
+                entity.discard();
+                removed = true;
+                if (!all) {
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+}
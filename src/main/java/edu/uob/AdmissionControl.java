@@ -0,0 +1,113 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+* Limits how many commands the listeners let through at once.
+*
+* <p>Up to maxInFlight commands run, up to maxQueued more requests wait for a slot, and
+* anything beyond that gets {@link #BUSY_RESPONSE} straight away instead of slowing everyone down.
+* Only threads that serve a single client may wait, i.e. the threaded listener and the HTTP
+* gateway; a selector IO thread uses {@link #tryRun}, since waiting there would stall every
+* connection on its selector, so maxQueued does not apply to it. The blocking listener
+* serves one connection at a time and does not use admission control at all.
+*/
+public class AdmissionControl {
+    public static final String BUSY_RESPONSE = "[Error] Server busy, please try again later";
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Semaphore slots;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdmissionControl(int maxInFlight, int maxQueued) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.slots = new Semaphore(maxInFlight, true);
+    }
+
+    public AdmissionControl(ServerOptions options) {
+        this(options.getMaxInFlight(), options.getMaxQueued());
+    }
+
+    //run the batch if it is admitted, otherwise answer every command with the busy response
+    public List<String> run(List<String> commands, Function<List<String>, List<String>> handler) {
+        return this.run(commands, handler, true);
+    }
+
+    //like run, but busy at once when no slot is free instead of waiting for one
+    public List<String> tryRun(List<String> commands, Function<List<String>, List<String>> handler) {
+        return this.run(commands, handler, false);
+    }
+
+    private List<String> run(List<String> commands, Function<List<String>, List<String>> handler, boolean mayWait) {
+        //a batch larger than the limit takes every slot rather than never fitting
+        int permits = Math.min(commands.size(), maxInFlight);
+        if (!this.enter(permits, mayWait)) {
+            return new ArrayList<>(Collections.nCopies(commands.size(), BUSY_RESPONSE));
+        }
+        try {
+            return handler.apply(commands);
+        } finally {
+            slots.release(permits);
+        }
+    }
+
+    private boolean enter(int permits, boolean mayWait) {
+        if (slots.tryAcquire(permits)) {
+            admitted.addAndGet(permits);
+            return true;
+        }
+        if (!mayWait) {
+            rejected.addAndGet(permits);
+            return false;
+        }
+        if (waiting.incrementAndGet() > maxQueued) {
+            waiting.decrementAndGet();
+            rejected.addAndGet(permits);
+            return false;
+        }
+        queued.addAndGet(permits);
+        try {
+            slots.acquire(permits);
+            admitted.addAndGet(permits);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.addAndGet(permits);
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    //commands that had to wait for a slot before running
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+}
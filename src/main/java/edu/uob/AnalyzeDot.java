@@ -9,20 +9,26 @@ public class AnalyzeDot {
     //store different things
     public static class AnalysisResult {
         Map<String, GameEntity.Location> locations;
-        Map<String, List<GameEntity.Item>> artefacts;
-        Map<String, List<GameEntity.Item>> furniture;
-        Map<String, List<GameEntity.Item>> characters;
+        //every location and entity of the file, kind and container included
+        WorldStore world;
 
         public AnalysisResult() {
+            this(new WorldStore());
+        }
+
+        public AnalysisResult(WorldStore world) {
             this.locations = new LinkedHashMap<>();
-            this.artefacts = new LinkedHashMap<>();
-            this.furniture = new LinkedHashMap<>();
-            this.characters = new LinkedHashMap<>();
+            this.world = world;
         }
     }
 
     // analysis of DOT files
     public static AnalysisResult analyzeDots(File dotFile, StringBuilder startingLocationHolder, Set<String> validWords) {
+        return AnalyzeDot.analyzeDots(dotFile, startingLocationHolder, validWords, new WorldStore());
+    }
+
+    //load into the given store, e.g. an off-heap one for very large maps
+    public static AnalysisResult analyzeDots(File dotFile, StringBuilder startingLocationHolder, Set<String> validWords, WorldStore world) {
         try {
             //check if the file exists
             if (dotFile == null) {
@@ -39,7 +45,7 @@ public class AnalyzeDot {
             GameEntity.Location currentLocation = null;
             //start location name
             String startingLocation = null;
-            AnalysisResult result = new AnalysisResult();
+            AnalysisResult result = new AnalysisResult(world);
 
             Pattern locationPattern = Pattern.compile("\\s*(\\S+)\\s*\\[description\\s*=\\s*\"([^\"]+)\"\\s*]");
             Pattern itemPattern = Pattern.compile("\\s*(\\w+)\\s*\\[description\\s*=\\s*\"([^\"]+)\"\\s*]");
@@ -68,7 +74,7 @@ public class AnalyzeDot {
                     String locationName = locationMatcher.group(1);
                     String description = locationMatcher.group(2);
                     //create a new location object
-                    currentLocation = new GameEntity.Location(locationName, description);
+                    currentLocation = new GameEntity.Location(result.world, locationName, description);
                     //map for recording all locations
                     result.locations.put(locationName, currentLocation);
                     //add validWords
@@ -88,26 +94,15 @@ public class AnalyzeDot {
                 if (itemMatcher.matches() && currentLocation != null && currentCategory != null) {
                     String itemName = itemMatcher.group(1);
                     String itemDescription = itemMatcher.group(2);
-                    GameEntity.Item item = new GameEntity.Item(itemName, itemDescription);
+                    GameEntity.Item item = new GameEntity.Item(result.world, itemName, itemDescription);
 
+                    //the store records the kind and the location, so no per-category maps are needed
                     if (currentCategory.equals("artefacts")) {
                         currentLocation.addItem(item);
-                        if (!result.artefacts.containsKey(currentLocation.getName())) {
-                            result.artefacts.put(currentLocation.getName(), new LinkedList<>());
-                        }
-                        result.artefacts.get(currentLocation.getName()).add(item);
                     } else if (currentCategory.equals("furniture")) {
                         currentLocation.addFurniture(item);
-                        if (!result.furniture.containsKey(currentLocation.getName())) {
-                            result.furniture.put(currentLocation.getName(), new LinkedList<>());
-                        }
-                        result.furniture.get(currentLocation.getName()).add(item);
                     } else if (currentCategory.equals("characters")) {
                         currentLocation.addCharacter(item);
-                        if (!result.characters.containsKey(currentLocation.getName())) {
-                            result.characters.put(currentLocation.getName(), new LinkedList<>());
-                        }
-                        result.characters.get(currentLocation.getName()).add(item);
                     }
                 }
 
@@ -0,0 +1,194 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+* Reusable, asynchronous client for load tools and bots.
+*
+* <p>Keeps a fixed pool of persistent connections and spreads players over them by name,
+* so all commands of one player share a connection and run in the order they were sent.
+* Each connection pipelines: {@link #send} writes the command on the caller's thread and
+* returns without waiting for the answer, and a reader thread per connection completes the
+* futures in the order the server answers them. The sockets are blocking, so a send can
+* still wait while the server is not reading. The server must keep sessions open
+* ({@code --session-timeout}).
+*/
+public class AsyncGameClient implements Closeable {
+
+    private static final char END_OF_TRANSMISSION = 4;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private volatile boolean closed;
+
+    public AsyncGameClient(String host, int port, int connectionCount, boolean binary) throws IOException {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException(String.format("[Error] connection count must be at least 1: %d", connectionCount));
+        }
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                connections.add(new Connection(host, port, binary, i));
+            }
+        } catch (IOException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    //the future completes with the response text, or exceptionally if the connection is lost
+    public CompletableFuture<String> send(String player, String command) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("[Error] Client is closed"));
+        }
+        String commandLine;
+        try {
+            commandLine = AsyncGameClient.toCommandLine(player, command);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        //one connection per player: the server answers a connection in order, but not across connections
+        Connection connection = connections.get(Math.floorMod(player.hashCode(), connections.size()));
+        return connection.send(player, command, commandLine);
+    }
+
+    //same checks as the server, and no line break that would split the text protocol into two commands
+    private static String toCommandLine(String player, String command) {
+        if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("[Error] Command cannot contain line breaks");
+        }
+        return BinaryProtocol.toCommandLine(player, command);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.fail(new IOException("[Error] Client is closed"));
+        }
+    }
+
+    //one socket, its pending futures in send order, and the thread that reads the answers
+    private static final class Connection {
+        private final Socket socket;
+        private final BufferedReader socketReader;
+        private final BufferedWriter socketWriter;
+        private final BinaryProtocol.FrameReader frameReader;
+        private final BinaryProtocol.FrameWriter frameWriter;
+        private final Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+        private volatile IOException failure;
+
+        Connection(String host, int port, boolean binary, int index) throws IOException {
+            this.socket = new Socket(host, port);
+            this.socket.setTcpNoDelay(true);
+            if (binary) {
+                BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                out.write(BinaryProtocol.MAGIC);
+                this.frameReader = new BinaryProtocol.FrameReader(new BufferedInputStream(socket.getInputStream()));
+                this.frameWriter = new BinaryProtocol.FrameWriter(out);
+                this.socketReader = null;
+                this.socketWriter = null;
+            } else {
+                this.socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                this.socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                this.frameReader = null;
+                this.frameWriter = null;
+            }
+            Thread reader = new Thread(this::readResponses, String.format("stag-client-%d", index));
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        //enqueue before writing so the reader can never see a response without its future
+        synchronized CompletableFuture<String> send(String player, String command, String commandLine) {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            if (failure != null) {
+                response.completeExceptionally(failure);
+                return response;
+            }
+            pending.add(response);
+            if (failure != null) {
+                //lost a race with the reader failing the connection
+                this.fail(failure);
+                return response;
+            }
+            try {
+                if (frameWriter != null) {
+                    frameWriter.writeFrame(player);
+                    frameWriter.writeFrame(command);
+                    frameWriter.flush();
+                } else {
+                    socketWriter.write(commandLine);
+                    socketWriter.write('\n');
+                    socketWriter.flush();
+                }
+            } catch (IOException e) {
+                this.fail(e);
+            }
+            return response;
+        }
+
+        private void readResponses() {
+            try {
+                String response;
+                while ((response = this.readResponse()) != null) {
+                    CompletableFuture<String> future = pending.poll();
+                    if (future != null) {
+                        future.complete(response);
+                    }
+                }
+                this.fail(new IOException("Server disconnected (end-of-stream)"));
+            } catch (IOException e) {
+                this.fail(e);
+            }
+        }
+
+        //null at end of stream
+        private String readResponse() throws IOException {
+            if (frameReader != null) {
+                return frameReader.readFrame();
+            }
+            String line = socketReader.readLine();
+            if (line == null) {
+                return null;
+            }
+            StringBuilder response = new StringBuilder();
+            while (line != null && line.indexOf(END_OF_TRANSMISSION) < 0) {
+                if (response.length() > 0) {
+                    response.append('\n');
+                }
+                response.append(line);
+                line = socketReader.readLine();
+            }
+            return response.toString();
+        }
+
+        //fail every outstanding future once; later sends fail straight away
+        void fail(IOException cause) {
+            if (failure == null) {
+                failure = cause;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //already closing, nothing else to do
+            }
+            CompletableFuture<String> future;
+            while ((future = pending.poll()) != null) {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+}
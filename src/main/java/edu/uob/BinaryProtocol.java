@@ -0,0 +1,189 @@
+package edu.uob;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+* Length-prefixed alternative to the line based text protocol.
+*
+* <p>A client opts in by sending {@link #MAGIC} as the very first byte of the connection.
+* After that every request is two frames (player name, command) and every response is
+* one frame. A frame is a 4-byte big-endian length followed by that many UTF-8 bytes,
+* so neither side has to scan for newlines or END_OF_TRANSMISSION. A player name holding
+* ':' or a control character is refused and the connection closed.
+*/
+public final class BinaryProtocol {
+
+    //0xB5 is a UTF-8 continuation byte, so it can never start a text command
+    public static final int MAGIC = 0xB5;
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private BinaryProtocol() {
+    }
+
+    //player and command are joined back into the "player: command" form handleCommand expects
+    static String toCommandLine(String playerName, String command) {
+        //handleCommand splits at the first ':', so such a name would turn into another player or command
+        for (int i = 0; i < playerName.length(); i++) {
+            char c = playerName.charAt(i);
+            if (c == ':' || Character.isISOControl(c)) {
+                throw new IllegalArgumentException("[Error] Player name cannot contain ':' or control characters");
+            }
+        }
+        return playerName + ": " + command;
+    }
+
+    //a bad player name is a framing error, so the connection is dropped like for a bad length
+    private static String toRequest(String playerName, String command) throws IOException {
+        try {
+            return BinaryProtocol.toCommandLine(playerName, command);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException(String.format("[Error] Invalid frame length: %d", length));
+        }
+    }
+
+    //decode one request from the buffer, or return null and leave the buffer untouched if it is incomplete
+    static String decodeRequest(ByteBuffer in) throws IOException {
+        int start = in.position();
+        String playerName = BinaryProtocol.decodeFrame(in);
+        String command = playerName == null ? null : BinaryProtocol.decodeFrame(in);
+        if (command == null) {
+            in.position(start);
+            return null;
+        }
+        return BinaryProtocol.toRequest(playerName, command);
+    }
+
+    private static String decodeFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int length = in.getInt(in.position());
+        BinaryProtocol.checkLength(length);
+        if (in.remaining() < Integer.BYTES + length) {
+            return null;
+        }
+        in.position(in.position() + Integer.BYTES);
+        String text;
+        if (in.hasArray()) {
+            text = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.duplicate().get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return text;
+    }
+
+    //reads frames from a blocking stream into one reusable byte array
+    public static final class FrameReader {
+        private final DataInputStream in;
+        private byte[] buffer = new byte[256];
+
+        public FrameReader(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        //null at a clean end of stream
+        public String readFrame() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            BinaryProtocol.checkLength(length);
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        //null at a clean end of stream, otherwise the request as a "player: command" line
+        public String readRequest() throws IOException {
+            String playerName = this.readFrame();
+            if (playerName == null) {
+                return null;
+            }
+            String command = this.readFrame();
+            if (command == null) {
+                throw new EOFException("[Error] Stream ended between player name and command");
+            }
+            return BinaryProtocol.toRequest(playerName, command);
+        }
+
+        public boolean hasBufferedInput() throws IOException {
+            return in.available() > 0;
+        }
+    }
+
+    //encodes frames through one reusable buffer and encoder
+    public static final class FrameWriter {
+        private final DataOutputStream out;
+        private final CharsetEncoder encoder = BinaryProtocol.newEncoder();
+        private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        public FrameWriter(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        public void writeFrame(String text) throws IOException {
+            buffer = BinaryProtocol.encode(encoder, text, buffer);
+            out.writeInt(buffer.remaining());
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    //replaces unencodable characters like String.getBytes does instead of failing
+    static CharsetEncoder newEncoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    //encode into the given heap buffer, growing it when the text does not fit; the result is flipped
+    static ByteBuffer encode(CharsetEncoder encoder, String text, ByteBuffer buffer) throws CharacterCodingException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            buffer.clear();
+            encoder.reset();
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(buffer);
+            }
+            if (result.isOverflow()) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                chars.rewind();
+                continue;
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
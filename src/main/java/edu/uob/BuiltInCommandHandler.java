@@ -18,7 +18,7 @@ public class BuiltInCommandHandler {
     }
 
     public String handleBuiltInCommand(Player player, String action, List<String> object) {
-        System.out.println("\n[Debug] Handling built-in command");
+        Log.debug("\n[Debug] Handling built-in command");
         switch (action) {
             case "inventory":
             case "inv":
@@ -34,7 +34,7 @@ public class BuiltInCommandHandler {
                 return this.handleGotoCommand(player, object);
 
             case "look":
-                return player.lookAround(multiPlayerHandler);
+                return player.lookAround();
 
             case "health":
                 return player.checkHealth(health);
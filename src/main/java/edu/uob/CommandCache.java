@@ -0,0 +1,84 @@
+package edu.uob;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.uob.HandleInputCommand.Command;
+
+/**
+* Bounded LRU cache from normalized command text to its parsed {@link Command}.
+*
+* <p>A parse only depends on the text and the {@link Vocabulary}, so entries are tied to the
+* vocabulary they were parsed with and the whole cache is dropped as soon as a different
+* one is passed in (a new game was loaded). Commands are immutable, so a cached one can be
+* handed to every player.
+*/
+public final class CommandCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    //access order, so the first entry is always the least recently used
+    private final LinkedHashMap<String, Command> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Vocabulary vocabulary;
+    private long hits;
+    private long misses;
+
+    public CommandCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("[Error] command cache capacity must be at least 1: %d", capacity));
+        }
+        this.capacity = capacity;
+    }
+
+    //null on a miss
+    public synchronized Command get(Vocabulary current, String normalizedCommand) {
+        this.checkVocabulary(current);
+        Command command = entries.get(normalizedCommand);
+        if (command == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return command;
+    }
+
+    public synchronized void put(Vocabulary current, String normalizedCommand, Command command) {
+        this.checkVocabulary(current);
+        entries.put(normalizedCommand, command);
+        if (entries.size() > capacity) {
+            Iterator<Map.Entry<String, Command>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void checkVocabulary(Vocabulary current) {
+        if (current != vocabulary) {
+            entries.clear();
+            vocabulary = current;
+        }
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+        vocabulary = null;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CommandCache[size=%d/%d, hits=%d, misses=%d]", entries.size(), capacity, hits, misses);
+    }
+}
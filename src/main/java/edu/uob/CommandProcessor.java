@@ -1,6 +1,6 @@
 package edu.uob;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -9,49 +9,42 @@ import edu.uob.HandleInputCommand.Command;
 
 public class CommandProcessor {
     private final Player player;
-    private final List<GameAction> actions;
+    private final ActionIndex actionIndex;
     private final Map<String, GameEntity.Location> locations;
     private final BuiltInCommandHandler builtInCommandHandler;
     private final Health health;
+    //scratch space reused by every command of this player, see GameServer.processorFor
+    private final KeyphraseMatcher.Matches matches = new KeyphraseMatcher.Matches();
+    private final List<GameAction> matchedActions = new ArrayList<>();
 
-    public CommandProcessor(Player player, List<GameAction> actions, Map<String, GameEntity.Location> locations, 
+    public CommandProcessor(Player player, ActionIndex actionIndex, Map<String, GameEntity.Location> locations, 
                             BuiltInCommandHandler builtInCommandHandler, Health health) {
         this.player = player;
-        this.actions = actions;
+        this.actionIndex = actionIndex;
         this.locations = locations;
         this.builtInCommandHandler = builtInCommandHandler;
         this.health = health;
     }
 
     public String processCommand(String command) {
+        CommandTokenizer tokens = new CommandTokenizer();
+        tokens.tokenizeCommand(command);
+        return this.processCommand(tokens);
+    }
+
+    //the tokenizer already holds this player's command split into words
+    public String processCommand(CommandTokenizer tokens) {
 
         try {
-            Command parsedCommand = HandleInputCommand.parseCommand(command);
+            Command parsedCommand = HandleInputCommand.parseCommand(tokens, matches);
 
             String action = parsedCommand.getCommand();
             List<String> objects = parsedCommand.getObject();
 
-            //match all behaviors (actions + key objects)
-            List<GameAction> matchedActions = new LinkedList<>();
-
-            for (GameAction gameAction : actions) {
-                //check for trigger match any action
-                if (gameAction.getTriggers().contains(action)) {
-                    boolean allMatch = true;
-
-                    //check all objects match
-                    for (String obj : objects) {
-                        if (!gameAction.getSubjects().contains(obj)) {
-                            allMatch = false;
-                            break;
-                        }
-                    }
-
-                    if (allMatch) {
-                        System.out.println(String.format("[Debug] Finding the matching action: %s", gameAction.getTriggers()));
-                        matchedActions.add(gameAction);
-                    }
-                }
+            //match all behaviors (actions + key objects), only looking at actions with this trigger
+            actionIndex.match(parsedCommand.getCommandId(), parsedCommand.getObjectIds(), matchedActions);
+            for (GameAction matchedAction : matchedActions) {
+                Log.debug("[Debug] Finding the matching action: %s", matchedAction.getTriggers());
             }
 
             //check the number of matching actions
@@ -94,184 +87,47 @@ public class CommandProcessor {
     }
 
     private boolean checkConditions(GameAction action) {
-        System.out.println(String.format("[Debug] Checking the action conditions \n  Triggers: %s, Consumed: %s, Subjects: %s",
-                action.getTriggers(), action.getConsumed(), action.getSubjects()));
+        Log.debug("[Debug] Checking the action conditions \n  Triggers: %s, Consumed: %s, Subjects: %s",
+                action.getTriggers(), action.getConsumed(), action.getSubjects());
     
-        //check consumed item exists in the player's backpack or location
-        for (String requiredItem : action.getConsumed()) {
-            if (!"health".equalsIgnoreCase(requiredItem)) {
-                boolean foundInPack = player.checkPack(requiredItem);
+        GameEntity.Location location = player.getLocation();
 
-                boolean foundInLocation = false;
-                for (GameEntity furniture : player.getLocation().getFurniture()) {
-                    if (furniture.getName().equalsIgnoreCase(requiredItem)) {
-                        foundInLocation = true;
-                        break;
-                    }
-                }
-
-                boolean foundInCharacters = false;
-                for (GameEntity character : player.getLocation().getCharacters()) {
-                    if (character.getName().equalsIgnoreCase(requiredItem)) {
-                        foundInCharacters = true;
-                        break;
-                    }
-                }
-    
-                if (!foundInPack && !foundInLocation && !foundInCharacters) {
-                    System.out.println(String.format("[Debug] Missing the necessary items: %s", requiredItem));
-                    return false;
-                }
-    
-                /*if (foundInPack) {
-                    System.out.println(String.format("[Debug] consumed in backpack: %s", requiredItem));
-                }
-    
-                if (foundInLocation) {
-                    System.out.println(String.format("[Debug] consumed in location: %s", requiredItem));
-                }
-    
-                if (foundInCharacters) {
-                    System.out.println(String.format("[Debug] consumed character in location: %s", requiredItem));
-                }*/
-            }
+        //check consumed item exists in the player's backpack, or as furniture or a character here
+        int missing = EntityPresence.firstMissing(action.getConsumedIds(), player.getPackPresence(), location.getFixturePresence(), null);
+        if (missing >= 0) {
+            Log.debug("[Debug] Missing the necessary items: %s", EntityIds.nameOf(missing));
+            return false;
         }
     
-        // check subjects: objects to be acted on by the action
-        for (String requiredSubject : action.getSubjects()) {
-            if (!"health".equalsIgnoreCase(requiredSubject)) {
-                boolean foundInPack = player.checkPack(requiredSubject);
-                boolean foundInLocation = player.getLocation().containsEntity(requiredSubject);
-
-                boolean foundInCharacters = false;
-                for (GameEntity character : player.getLocation().getCharacters()) {
-                    if (character.getName().equalsIgnoreCase(requiredSubject)) {
-                        foundInCharacters = true;
-                        break;
-                    }
-                }
-    
-                if (!foundInPack && !foundInLocation && !foundInCharacters) {
-                    System.out.println(String.format("[Debug] subjects not found: %s", requiredSubject));
-                    return false;
-                }
-
-            }
+        // check subjects: objects to be acted on by the action, in the backpack or anywhere here
+        missing = EntityPresence.firstMissing(action.getSubjectIds(), player.getPackPresence(), location.getFixturePresence(), location.getItemPresence());
+        if (missing >= 0) {
+            Log.debug("[Debug] subjects not found: %s", EntityIds.nameOf(missing));
+            return false;
         }
     
-        System.out.println("[Debug] Action condition check passed");
+        Log.debug("[Debug] Action condition check passed");
         return true;
     }
     
 
     
     private void executeAction(GameAction action) {
-        System.out.println(String.format("[Debug] The action will be executed: %s", action.getTriggers()));
+        Log.debug("[Debug] The action will be executed: %s", action.getTriggers());
     
         try {
-            // handling of consumed
-            for (String consumed : action.getConsumed()) {
-
-                //consumption health
-                if ("health".equals(consumed)) {
-                    int beforeHealth = health.getHealth(player.getName());
-                    String healthResult = health.modifyHealth(player.getName(), -1);
-                    int afterHealth = health.getHealth(player.getName());
-    
-                    System.out.println(String.format("[Debug] health: %s (before: %d, after: %d)", healthResult, beforeHealth, afterHealth));
-    
-                    //detects player death and quickly stops
-                    if ("You're dead".equals(healthResult)) {
-                        Health.handlePlayerDeath(player, health);
-                        throw new PlayerDeathException(healthResult);
-                    }
-
-                } else if (player.checkPack(consumed)) {
-                    //check backpack
-                    player.removeItem(consumed);
-                    System.out.println(String.format("[Debug] Removed consumables from backpack: %s", consumed));
-
-                } else {
-                    //check location
-                    boolean removed = false;
-    
-                    //check item
-                    for (GameEntity item : new LinkedList<>(player.getLocation().getItems())) {
-                        if (item.getName().equals(consumed)) {
-                            player.getLocation().getItems().remove(item);
-                            removed = true;
-                            System.out.println(String.format("[Debug] Removed item from location: %s", consumed));
-                            break;
-                        }
-                    }
-    
-                    //check furniture
-                    if (!removed) {
-                        for (GameEntity furniture : new LinkedList<>(player.getLocation().getFurniture())) {
-                            if (furniture.getName().equals(consumed)) {
-                                player.getLocation().getFurniture().remove(furniture);
-                                removed = true;
-                                System.out.println(String.format("[Debug] Removed furniture from location: %s", consumed));
-                                break;
-                            }
-                        }
-                    }
-    
-                    //check character
-                    if (!removed) {
-                        for (GameEntity character : new LinkedList<>(player.getLocation().getCharacters())) {
-                            if (character.getName().equalsIgnoreCase(consumed)) {
-                                player.getLocation().getCharacters().remove(character);
-                                removed = true;
-                                System.out.println(String.format("[Debug] Removed furniture from character: %s", consumed));
-                                break;
-                            }
-                        }
-                    }
-    
-                    if (!removed) {
-                        System.out.println(String.format("[Error] Consumables not found: %s", consumed));
-                    }
-                }
-            }
-    
-            //generate a new item or location
-            for (String produced : action.getProduced()) {
-    
-                if ("health".equalsIgnoreCase(produced)) {
-                    int beforeHealth = health.getHealth(player.getName());
-                    String healthResult = health.modifyHealth(player.getName(), 1);
-                    int afterHealth = health.getHealth(player.getName());
-    
-                    System.out.println(String.format("[Debug] health: %s (before: %d, after: %d)", healthResult, beforeHealth, afterHealth));
-
-                } else {
-                    //check location connection
-                    GameEntity.Location newLocation = locations.get(produced);
-                    if (newLocation != null) {
-                        if (!player.getLocation().getConnectedLocations().contains(newLocation)) {
-                            player.getLocation().addConnectedLocation(newLocation);
-                        } else {
-                            System.out.println(String.format("[Debug] %s already existed", produced));
-                        }
-                    } else {
-                        //check item
-                        GameEntity.Item newItem = new GameEntity.Item(produced, "Generated by action");
-                        if (!player.getLocation().getItems().contains(newItem)) {
-                            player.getLocation().addItem(newItem);
-                            player.addInPack(newItem);
-                        } else {
-                            System.out.println(String.format("Debug: %s already existed", produced));
-                        }
-                    }
-                }
+            //compiled at load time, see GameServer; anything built later is compiled on first use
+            ActionPlan plan = action.getPlan();
+            if (plan == null) {
+                plan = ActionPlan.compile(action, locations);
+                action.setPlan(plan);
             }
-
+            plan.execute(player, health);
         } catch (PlayerDeathException ex) {
             throw ex;
         } catch (Exception ex) {
-            System.out.println(String.format("[Error] Unknown Error: %s", ex.getMessage()));
+            Log.error("[Error] Unknown Error: %s", ex.getMessage());
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+/**
+* Single pass replacement for the regex/split based parsing of "player: command" lines.
+*
+* <p>The command is lower-cased into a reusable char buffer, with the words separated by
+* single spaces, and each word is recorded as a start/end offset into it, so nothing is allocated per command until a caller asks for
+* a word as a {@code String}. An instance is reused for every command and is not thread
+* safe; {@code GameServer.handleCommand} is synchronized, which is what makes sharing one
+* there safe.
+*/
+public final class CommandTokenizer {
+
+    public enum Status { OK, MISSING_PLAYER, INVALID_PLAYER }
+
+    private char[] chars = new char[128];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int tokenCount;
+    private int length;
+    private boolean blank;
+    private String playerName;
+
+    //split "player: command", validate the player name and tokenize the command
+    public Status tokenizeLine(String line) {
+        playerName = null;
+        tokenCount = 0;
+        length = 0;
+        blank = true;
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            return Status.MISSING_PLAYER;
+        }
+        int start = CommandTokenizer.skipSpace(line, 0, colon);
+        int end = colon;
+        while (end > start && CommandTokenizer.isSpace(line.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return Status.INVALID_PLAYER;
+        }
+        for (int i = start; i < end; i++) {
+            if (!CommandTokenizer.isPlayerNameChar(line.charAt(i))) {
+                return Status.INVALID_PLAYER;
+            }
+        }
+        playerName = line.substring(start, end);
+        this.tokenize(line, colon + 1);
+        return Status.OK;
+    }
+
+    //tokenize a command on its own, with an optional leading "name:" prefix
+    public void tokenizeCommand(String command) {
+        playerName = null;
+        this.tokenize(command, 0);
+    }
+
+    private void tokenize(String text, int from) {
+        tokenCount = 0;
+        int textLength = text.length();
+        int position = CommandTokenizer.skipSpace(text, from, textLength);
+        blank = position == textLength;
+
+        //drop one leading "word:" prefix, as the old replaceAll("^\\w+:\\s*", "") did
+        int word = position;
+        while (word < textLength && CommandTokenizer.isWordChar(text.charAt(word))) {
+            word++;
+        }
+        if (word > position && word < textLength && text.charAt(word) == ':') {
+            position = CommandTokenizer.skipSpace(text, word + 1, textLength);
+        }
+
+        if (chars.length < textLength) {
+            chars = new char[Math.max(textLength, chars.length * 2)];
+        }
+        int out = 0;
+        while (position < textLength) {
+            if (tokenCount > 0) {
+                chars[out++] = ' ';
+            }
+            if (tokenCount == starts.length) {
+                starts = Arrays.copyOf(starts, tokenCount * 2);
+                ends = Arrays.copyOf(ends, tokenCount * 2);
+            }
+            starts[tokenCount] = out;
+            char c;
+            while (position < textLength && !CommandTokenizer.isSpace(c = text.charAt(position))) {
+                chars[out++] = CommandTokenizer.toLower(c);
+                position++;
+            }
+            ends[tokenCount++] = out;
+            position = CommandTokenizer.skipSpace(text, position, textLength);
+        }
+        this.length = out;
+    }
+
+    //the name before the first ':' of the last tokenizeLine, null if it was not valid
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    //true if the command had no non-space characters at all
+    public boolean isBlank() {
+        return blank;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public String token(int index) {
+        return new String(chars, starts[index], ends[index] - starts[index]);
+    }
+
+    //offsets into chars(), valid until the next tokenize call
+    public int tokenStart(int index) {
+        return starts[index];
+    }
+
+    public int tokenEnd(int index) {
+        return ends[index];
+    }
+
+    //the normalized command is chars()[0, length())
+    public char[] chars() {
+        return chars;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    //the lower-case, single-spaced command as a string, e.g. for a cache key
+    public String normalized() {
+        return new String(chars, 0, length);
+    }
+
+    //same characters as the old "^[a-zA-Z0-9_'\\-@]+$" player name pattern
+    private static boolean isPlayerNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '\'' || c == '-' || c == '@';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    //whitespace in the sense of String.trim()
+    private static boolean isSpace(char c) {
+        return c <= ' ';
+    }
+
+    private static int skipSpace(String text, int position, int end) {
+        while (position < end && CommandTokenizer.isSpace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    //ASCII fast path, anything else goes through Character
+    private static char toLower(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+}
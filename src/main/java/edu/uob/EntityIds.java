@@ -0,0 +1,55 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+* Dense int IDs for entity names, shared by every location, inventory and action.
+*
+* <p>Names are case-insensitive and get their ID the first time they are seen, so items
+* produced by actions at run time are covered as well as everything in the entities file.
+*/
+public final class EntityIds {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final List<String> names = new CopyOnWriteArrayList<>();
+
+    private EntityIds() {
+    }
+
+    public static int of(String name) {
+        String key = name.toLowerCase();
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            return ids.computeIfAbsent(key, newName -> {
+                names.add(newName);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    public static String nameOf(int id) {
+        return names.get(id);
+    }
+
+    //a bitset of the named entities as longs, "health" is not an entity and is left out
+    public static long[] bitsOf(List<String> entityNames) {
+        long[] bits = new long[0];
+        for (String name : entityNames) {
+            if ("health".equalsIgnoreCase(name)) {
+                continue;
+            }
+            int id = EntityIds.of(name);
+            if (id >>> 6 >= bits.length) {
+                bits = Arrays.copyOf(bits, (id >>> 6) + 1);
+            }
+            bits[id >>> 6] |= 1L << id;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,360 @@
+package edu.uob;
+
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+* Insertion-ordered entity list with a name index, used for a location's items, furniture,
+* characters and exits and for a player's inventory.
+*
+* <p>Entities sit in a doubly linked list, so iteration order is the order they were added
+* and removal through an iterator is O(1). Each name also keeps a chain of the nodes with
+* that name in list order, so finding, removing or testing membership by name or by
+* instance does not scan the list. Every change keeps an {@link EntityPresence} up to date
+* and then runs an optional callback, e.g. to drop a cached rendering.
+*/
+public final class EntityIndex<E extends GameEntity> extends AbstractSequentialList<E> {
+
+    private static final class Node<E> {
+        private E entity;
+        private Node<E> previous;
+        private Node<E> next;
+        //neighbours with the same name, in list order
+        private Node<E> previousSame;
+        private Node<E> nextSame;
+    }
+
+    //first and last node of one name's chain
+    private static final class Chain<E> {
+        private Node<E> first;
+        private Node<E> last;
+    }
+
+    //sentinel of a circular list: header.next is the first entity, header.previous the last
+    private final Node<E> header = new Node<>();
+    private final Map<String, Chain<E>> byName = new HashMap<>();
+    private final EntityPresence presence;
+    //WorldStore container recorded for entities added here, or UNTRACKED
+    private final int container;
+    private final Runnable onChange;
+    private int size;
+
+    private static final int UNTRACKED = Integer.MIN_VALUE;
+
+    public EntityIndex(EntityPresence presence) {
+        this(presence, UNTRACKED, () -> { });
+    }
+
+    public EntityIndex(EntityPresence presence, int container) {
+        this(presence, container, () -> { });
+    }
+
+    public EntityIndex(EntityPresence presence, Runnable onChange) {
+        this(presence, UNTRACKED, onChange);
+    }
+
+    //onChange runs after every modification
+    public EntityIndex(EntityPresence presence, int container, Runnable onChange) {
+        this.presence = presence;
+        this.container = container;
+        this.onChange = onChange;
+        header.previous = header;
+        header.next = header;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    //first entity with exactly this name, or null
+    public E find(String name) {
+        Chain<E> chain = byName.get(name);
+        return chain == null ? null : chain.first.entity;
+    }
+
+    public boolean containsName(String name) {
+        return byName.containsKey(name);
+    }
+
+    //remove the first entity with exactly this name, false if there was none
+    public boolean removeFirst(String name) {
+        return this.takeFirst(name) != null;
+    }
+
+    //remove and return the first entity with exactly this name, or null
+    public E takeFirst(String name) {
+        Chain<E> chain = byName.get(name);
+        if (chain == null) {
+            return null;
+        }
+        E entity = chain.first.entity;
+        this.unlink(chain.first);
+        return entity;
+    }
+
+    @Override
+    public boolean add(E entity) {
+        this.linkBefore(entity, header);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return this.nodeOf(object) != null;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        Node<E> node = this.nodeOf(object);
+        if (node == null) {
+            return false;
+        }
+        this.unlink(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Node<E> node = header.next; node != header; node = node.next) {
+            presence.remove(node.entity.getEntityId());
+            this.leave(node.entity);
+        }
+        header.previous = header;
+        header.next = header;
+        byName.clear();
+        size = 0;
+        modCount++;
+        onChange.run();
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+        return new Cursor(index);
+    }
+
+    //entities are only equal to themselves, so only the chain for the object's name is searched
+    private Node<E> nodeOf(Object object) {
+        if (!(object instanceof GameEntity)) {
+            return null;
+        }
+        Chain<E> chain = byName.get(((GameEntity) object).getName());
+        if (chain == null) {
+            return null;
+        }
+        for (Node<E> node = chain.first; node != null; node = node.nextSame) {
+            if (node.entity.equals(object)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void linkBefore(E entity, Node<E> successor) {
+        Node<E> node = new Node<>();
+        node.entity = entity;
+        node.next = successor;
+        node.previous = successor.previous;
+        successor.previous.next = node;
+        successor.previous = node;
+        this.chain(node);
+        presence.add(entity.getEntityId());
+        this.enter(entity);
+        size++;
+        modCount++;
+        onChange.run();
+    }
+
+    private void unlink(Node<E> node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        this.unchain(node);
+        presence.remove(node.entity.getEntityId());
+        this.leave(node.entity);
+        size--;
+        modCount++;
+        onChange.run();
+    }
+
+    private void enter(E entity) {
+        if (container != UNTRACKED) {
+            entity.enter(container);
+        }
+    }
+
+    private void leave(E entity) {
+        if (container != UNTRACKED) {
+            entity.leave(container);
+        }
+    }
+
+    //add a linked node to its name's chain, after the nearest earlier node with the same name
+    private void chain(Node<E> node) {
+        String name = node.entity.getName();
+        Chain<E> chain = byName.get(name);
+        if (chain == null) {
+            chain = new Chain<>();
+            chain.first = node;
+            chain.last = node;
+            byName.put(name, chain);
+            return;
+        }
+        Node<E> before = null;
+        if (node.next == header) {
+            //appending, the common case
+            before = chain.last;
+        } else {
+            for (Node<E> scan = node.previous; scan != header; scan = scan.previous) {
+                if (scan.entity.getName().equals(name)) {
+                    before = scan;
+                    break;
+                }
+            }
+        }
+        node.previousSame = before;
+        node.nextSame = before == null ? chain.first : before.nextSame;
+        if (node.previousSame == null) {
+            chain.first = node;
+        } else {
+            node.previousSame.nextSame = node;
+        }
+        if (node.nextSame == null) {
+            chain.last = node;
+        } else {
+            node.nextSame.previousSame = node;
+        }
+    }
+
+    private void unchain(Node<E> node) {
+        String name = node.entity.getName();
+        Chain<E> chain = byName.get(name);
+        if (node.previousSame == null) {
+            chain.first = node.nextSame;
+        } else {
+            node.previousSame.nextSame = node.nextSame;
+        }
+        if (node.nextSame == null) {
+            chain.last = node.previousSame;
+        } else {
+            node.nextSame.previousSame = node.previousSame;
+        }
+        if (chain.first == null) {
+            byName.remove(name);
+        }
+        node.previousSame = null;
+        node.nextSame = null;
+    }
+
+    private final class Cursor implements ListIterator<E> {
+        private Node<E> next;
+        private int nextIndex;
+        private Node<E> lastReturned;
+        private int expectedModCount = modCount;
+
+        Cursor(int index) {
+            next = header.next;
+            for (int i = 0; i < index; i++) {
+                next = next.next;
+            }
+            nextIndex = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public E next() {
+            this.checkForModification();
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.entity;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public E previous() {
+            this.checkForModification();
+            if (!this.hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            next = next.previous;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.entity;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            this.checkForModification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (next == lastReturned) {
+                next = lastReturned.next;
+            } else {
+                nextIndex--;
+            }
+            EntityIndex.this.unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(E entity) {
+            this.checkForModification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            unchain(lastReturned);
+            presence.remove(lastReturned.entity.getEntityId());
+            EntityIndex.this.leave(lastReturned.entity);
+            lastReturned.entity = entity;
+            chain(lastReturned);
+            presence.add(entity.getEntityId());
+            EntityIndex.this.enter(entity);
+            onChange.run();
+        }
+
+        @Override
+        public void add(E entity) {
+            this.checkForModification();
+            lastReturned = null;
+            EntityIndex.this.linkBefore(entity, next);
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        private void checkForModification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
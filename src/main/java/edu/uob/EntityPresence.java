@@ -0,0 +1,52 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+/**
+* Live count of which entities are in one place (a location's items, its furniture and
+* characters, or a player's inventory), kept as a bitset for word-wide condition checks.
+*
+* <p>Counts sit behind the bits because the same name can be present more than once, and
+* removing one copy must not clear the bit while another is still there.
+*/
+public final class EntityPresence {
+    private int[] counts = new int[64];
+    private long[] bits = new long[1];
+
+    public void add(int id) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+        }
+        if (id >>> 6 >= bits.length) {
+            bits = Arrays.copyOf(bits, Math.max((id >>> 6) + 1, bits.length * 2));
+        }
+        if (counts[id]++ == 0) {
+            bits[id >>> 6] |= 1L << id;
+        }
+    }
+
+    public void remove(int id) {
+        if (id < counts.length && counts[id] > 0 && --counts[id] == 0) {
+            bits[id >>> 6] &= ~(1L << id);
+        }
+    }
+
+    public boolean contains(int id) {
+        return id >>> 6 < bits.length && (bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    private long word(int index) {
+        return index < bits.length ? bits[index] : 0L;
+    }
+
+    //first required entity ID missing from all three places, or -1 if everything is there
+    public static int firstMissing(long[] required, EntityPresence a, EntityPresence b, EntityPresence c) {
+        for (int i = 0; i < required.length; i++) {
+            long missing = required[i] & ~(a.word(i) | b.word(i) | (c == null ? 0L : c.word(i)));
+            if (missing != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(missing);
+            }
+        }
+        return -1;
+    }
+}
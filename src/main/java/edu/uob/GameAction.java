@@ -8,6 +8,10 @@ public class GameAction {
     private final List<String> consumed;
     private final List<String> produced;
     private final String narration;
+    //entity-ID bitsets of what must be present, without "health"
+    private final long[] subjectIds;
+    private final long[] consumedIds;
+    private ActionPlan plan;
 
 
     public GameAction(List<String> triggers, List<String> subjects, List<String> consumed,
@@ -17,6 +21,8 @@ public class GameAction {
         this.consumed = consumed;
         this.produced = produced;
         this.narration = narration;
+        this.subjectIds = EntityIds.bitsOf(subjects);
+        this.consumedIds = EntityIds.bitsOf(consumed);
     }
 
     public List<String> getTriggers() {
@@ -39,5 +45,21 @@ public class GameAction {
         return narration;
     }
 
+    public long[] getSubjectIds() {
+        return subjectIds;
+    }
+
+    public long[] getConsumedIds() {
+        return consumedIds;
+    }
+
+    public ActionPlan getPlan() {
+        return plan;
+    }
+
+    public void setPlan(ActionPlan plan) {
+        this.plan = plan;
+    }
+
 }
 
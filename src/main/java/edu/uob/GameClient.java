@@ -1,16 +1,28 @@
 package edu.uob;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
 * This is the sample client for you to connect to your game server.
 *
 * <p>Input are taken from stdin and output goes to stdout.
+*
+* <p>Pass {@code --session} after the username to keep one connection open for every
+* command (the server must be started with a session timeout), or {@code --pipeline}
+* to send every line of stdin at once and print the responses in order. A pipeline also
+* needs a session on the server: without one every connection answers a single command
+* and is closed. Adding {@code --binary} switches either mode to the length-prefixed
+* {@link BinaryProtocol}.
 */
 public final class GameClient {
 
@@ -18,6 +30,16 @@ public final class GameClient {
 
     public static void main(String[] args) throws IOException {
         String username = args[0];
+        List<String> flags = Arrays.asList(args);
+        boolean binary = flags.contains("--binary");
+        if (flags.contains("--pipeline")) {
+            GameClient.runPipeline(username, binary);
+            return;
+        }
+        if (flags.contains("--session") || binary) {
+            GameClient.runSession(username, binary);
+            return;
+        }
         while (!Thread.interrupted()) {
             GameClient.handleNextCommand(username);
         }
@@ -32,14 +54,157 @@ public final class GameClient {
         var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
             socketWriter.write(String.format("%s: %s\n", username, command));
             socketWriter.flush();
-            String incomingMessage = socketReader.readLine();
-            if (incomingMessage == null) {
+            if (!GameClient.printResponse(socketReader)) {
                 throw new IOException("Server disconnected (end-of-stream)");
             }
-            while (incomingMessage != null && !incomingMessage.contains(String.valueOf(GameClient.END_OF_TRANSMISSION))) {
-                System.out.println(incomingMessage);
-                incomingMessage = socketReader.readLine();
+        }
+    }
+
+    //send every command over one connection, reconnecting if the server closed an idle session
+    private static void runSession(String username, boolean binary) throws IOException {
+        BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
+        Session session = null;
+        try {
+            while (!Thread.interrupted()) {
+                System.out.print(String.format("%s:> ", username));
+                String command = commandLine.readLine();
+                if (command == null) {
+                    return;
+                }
+                if (session == null) {
+                    session = new Session(binary);
+                }
+                boolean answered;
+                try {
+                    answered = session.send(username, command);
+                } catch (IOException e) {
+                    answered = false;
+                }
+                if (!answered) {
+                    //the session timed out on the server side: retry once on a fresh connection
+                    session.close();
+                    session = new Session(binary);
+                    if (!session.send(username, command)) {
+                        throw new IOException("Server disconnected (end-of-stream)");
+                    }
+                }
+            }
+        } finally {
+            if (session != null) {
+                session.close();
             }
         }
     }
+
+    //write all commands without waiting, then read one response per command
+    private static void runPipeline(String username, boolean binary) throws IOException {
+        BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
+        List<String> commands = new ArrayList<>();
+        String command;
+        while ((command = commandLine.readLine()) != null) {
+            if (!command.isBlank()) {
+                commands.add(command);
+            }
+        }
+        try (Session session = new Session(binary)) {
+            session.pipeline(username, commands);
+        }
+    }
+
+    //one socket with its reader and writer, reused for every command
+    private static final class Session implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader socketReader;
+        private final BufferedWriter socketWriter;
+        private final BinaryProtocol.FrameReader frameReader;
+        private final BinaryProtocol.FrameWriter frameWriter;
+
+        Session(boolean binary) throws IOException {
+            this.socket = new Socket("localhost", 8888);
+            this.socket.setTcpNoDelay(true);
+            if (binary) {
+                BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                out.write(BinaryProtocol.MAGIC);
+                this.frameReader = new BinaryProtocol.FrameReader(new BufferedInputStream(socket.getInputStream()));
+                this.frameWriter = new BinaryProtocol.FrameWriter(out);
+                this.socketReader = null;
+                this.socketWriter = null;
+            } else {
+                this.socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                this.socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                this.frameReader = null;
+                this.frameWriter = null;
+            }
+        }
+
+        boolean send(String username, String command) throws IOException {
+            this.write(username, command);
+            this.flush();
+            return this.printResponse();
+        }
+
+        void pipeline(String username, List<String> commands) throws IOException {
+            for (String command : commands) {
+                this.write(username, command);
+            }
+            this.flush();
+            int answered = 0;
+            for (String command : commands) {
+                System.out.println(String.format("%s:> %s", username, command));
+                if (!this.printResponse()) {
+                    throw new IOException(String.format(
+                        "Server disconnected after %d of %d commands, --pipeline needs a server started with --session-timeout",
+                        answered, commands.size()));
+                }
+                answered++;
+            }
+        }
+
+        private void write(String username, String command) throws IOException {
+            if (frameWriter != null) {
+                frameWriter.writeFrame(username);
+                frameWriter.writeFrame(command);
+            } else {
+                socketWriter.write(String.format("%s: %s\n", username, command));
+            }
+        }
+
+        private void flush() throws IOException {
+            if (frameWriter != null) {
+                frameWriter.flush();
+            } else {
+                socketWriter.flush();
+            }
+        }
+
+        private boolean printResponse() throws IOException {
+            if (frameReader == null) {
+                return GameClient.printResponse(socketReader);
+            }
+            String response = frameReader.readFrame();
+            if (response == null) {
+                return false;
+            }
+            System.out.println(response);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    //print lines up to the END_OF_TRANSMISSION marker, false if the stream ended first
+    private static boolean printResponse(BufferedReader socketReader) throws IOException {
+        String incomingMessage = socketReader.readLine();
+        if (incomingMessage == null) {
+            return false;
+        }
+        while (incomingMessage != null && !incomingMessage.contains(String.valueOf(GameClient.END_OF_TRANSMISSION))) {
+            System.out.println(incomingMessage);
+            incomingMessage = socketReader.readLine();
+        }
+        return true;
+    }
 }
@@ -1,57 +1,119 @@
 package edu.uob;
 
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+//a view of one row of a WorldStore; the attributes themselves live in the store's columns
 public abstract class GameEntity {
-    private final String name;
-    private final String description;
+    private final WorldStore store;
+    private final int row;
 
     public GameEntity(String name, String description) {
-        this.name = name;
-        this.description = description;
+        this(WorldStore.shared(), name, description, WorldStore.ARTEFACT);
+    }
+
+    protected GameEntity(WorldStore store, String name, String description, int kind) {
+        this.store = store;
+        this.row = store.add(name, description, kind);
+    }
+
+    //a new view of a row that is already in the store
+    protected GameEntity(WorldStore store, int row) {
+        this.store = store;
+        this.row = row;
     }
 
     public String getName() {
-        return name;
+        return store.name(row);
     }
 
     public String getDescription() {
-        return description;
+        return store.description(row);
+    }
+
+    public int getEntityId() {
+        return store.entityId(row);
+    }
+
+    public WorldStore getStore() {
+        return store;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    //WorldStore kind flag: what this entity is currently used as
+    public int getKind() {
+        return store.kind(row);
+    }
+
+    //kept up to date by the EntityIndex the entity is added to or removed from
+    void enter(int container) {
+        store.enterContainer(row, container);
+    }
+
+    void leave(int container) {
+        store.leaveContainer(row, container);
+    }
+
+    //the entity was consumed: give its row back unless it is still in a location or inventory
+    void discard() {
+        store.release(row);
     }
 
     // child classes: Location
     public static class Location extends GameEntity {
-        private final List<GameEntity> items;
-        private final List<GameEntity> furniture;
-        private final List<GameEntity> characters;
-        private final List<Location> connectedLocations;
+        //name-indexed, so lookups and removals do not scan even in crowded hubs
+        private final EntityIndex<GameEntity> items;
+        private final EntityIndex<GameEntity> furniture;
+        private final EntityIndex<GameEntity> characters;
+        private final EntityIndex<Location> connectedLocations;
+        //read only, paths are opened through addConnectedLocation so the view stays current
+        private final List<Location> connectedView;
+        //artefacts here, and furniture plus characters here, for action condition checks
+        private final EntityPresence itemPresence = new EntityPresence();
+        private final EntityPresence fixturePresence = new EntityPresence();
+        //players standing here, in arrival order
+        private final Set<Player> occupants = new LinkedHashSet<>();
+        //what look shows apart from the other players, null until rendered or after a change
+        private String view;
 
         public Location(String name, String description) {
-            super(name, description);
-            this.items = new LinkedList<>();
-            this.furniture = new LinkedList<>();
-            this.characters = new LinkedList<>();
-            this.connectedLocations = new LinkedList<>();
+            this(WorldStore.shared(), name, description);
+        }
+
+        public Location(WorldStore store, String name, String description) {
+            super(store, name, description, WorldStore.LOCATION);
+            this.items = new EntityIndex<>(itemPresence, this.getRow(), this::invalidateView);
+            this.furniture = new EntityIndex<>(fixturePresence, this.getRow(), this::invalidateView);
+            this.characters = new EntityIndex<>(fixturePresence, this.getRow(), this::invalidateView);
+            this.connectedLocations = new EntityIndex<>(new EntityPresence(), this::invalidateView);
+            this.connectedView = Collections.unmodifiableList(connectedLocations);
         }
 
         public void addItem(GameEntity item) {
+            item.getStore().setKind(item.getRow(), WorldStore.ARTEFACT);
             items.add(item);
-            System.out.println(String.format("[Debug] Add item %s in %s", item.getName(), this.getName()));
+            Log.debug("[Debug] Add item %s in %s", item.getName(), this.getName());
         }
 
         public void addFurniture(GameEntity item) {
+            item.getStore().setKind(item.getRow(), WorldStore.FURNITURE);
             furniture.add(item);
         }
 
         public void addCharacter(GameEntity character) {
             if (!characters.contains(character)) {
+                character.getStore().setKind(character.getRow(), WorldStore.CHARACTER);
                 characters.add(character);
                 if (character instanceof Character) {
                     //set the location to the character's current location
                     ((Character) character).setLocation(this);
                 }
-                System.out.println(String.format("[Debug] Add character %s in %s", character.getName(), this.getName()));
+                Log.debug("[Debug] Add character %s in %s", character.getName(), this.getName());
             }
         }
 
@@ -59,53 +121,86 @@ public abstract class GameEntity {
             connectedLocations.add(location);
         }
 
+        //kept up to date by Player.setLocation
+        void addOccupant(Player player) {
+            occupants.add(player);
+        }
+
+        void removeOccupant(Player player) {
+            occupants.remove(player);
+        }
+
+        public Set<Player> getOccupants() {
+            return occupants;
+        }
+
+        private void invalidateView() {
+            view = null;
+        }
+
+        //the description, artefacts, furniture, characters and exits, rendered once per change
+        public String getView() {
+            if (view == null) {
+                StringBuilder description = new StringBuilder();
+                description.append("\nYou are at: ").append(this.getDescription()).append("\n");
+                description.append("You see the following artefacts:\n");
+                Location.appendEntities(description, items);
+                description.append("You see the following furniture:\n");
+                Location.appendEntities(description, furniture);
+                description.append("You see the following characters:\n");
+                Location.appendEntities(description, characters);
+                description.append("You can go to the following locations:\n");
+                for (Location location : connectedLocations) {
+                    description.append("- ").append(location.getName()).append("\n");
+                }
+                description.append("You see the other players:\n");
+                view = description.toString();
+            }
+            return view;
+        }
+
+        private static void appendEntities(StringBuilder description, List<GameEntity> entities) {
+            for (GameEntity entity : entities) {
+                description.append("- ").append(entity.getName()).append(": ").append(entity.getDescription()).append("\n");
+            }
+        }
+
         //remove
         public void removeItem(String itemName) {
-            for (GameEntity item : new LinkedList<>(items)) {
-                if (item.getName().equals(itemName)) {
-                    items.remove(item);
-                    System.out.println(String.format("[Debug] Removed item -> %s", itemName));
-                    break;
-                }
+            if (items.removeFirst(itemName)) {
+                Log.debug("[Debug] Removed item -> %s", itemName);
             }
         }
 
 
         //get
-        public List<GameEntity> getItems() {
+        public EntityIndex<GameEntity> getItems() {
             return items;
         }
 
-        public List<GameEntity> getFurniture() {
+        public EntityIndex<GameEntity> getFurniture() {
             return furniture;
         }
 
-        public List<GameEntity> getCharacters() {
+        public EntityIndex<GameEntity> getCharacters() {
             return characters;
         }
 
         public List<Location> getConnectedLocations() {
-            return connectedLocations;
+            return connectedView;
+        }
+
+        public EntityPresence getItemPresence() {
+            return itemPresence;
+        }
+
+        public EntityPresence getFixturePresence() {
+            return fixturePresence;
         }
 
         //check if the location contains the entity
         public boolean containsEntity(String entityName) {
-            for (GameEntity item : items) {
-                if (item.getName().equals(entityName)) {
-                    return true;
-                }
-            }
-            for (GameEntity furnitureItem : furniture) {
-                if (furnitureItem.getName().equals(entityName)) {
-                    return true;
-                }
-            }
-            for (GameEntity character : characters) {
-                if (character.getName().equals(entityName)) {
-                    return true;
-                }
-            }
-            return false;
+            return items.containsName(entityName) || furniture.containsName(entityName) || characters.containsName(entityName);
         }
     }
 
@@ -114,6 +209,15 @@ public abstract class GameEntity {
         public Item(String name, String description) {
             super(name, description);
         }
+
+        public Item(WorldStore store, String name, String description) {
+            super(store, name, description, WorldStore.ARTEFACT);
+        }
+
+        //e.g. an inventory item coming back from a PlayerArchive record
+        public Item(WorldStore store, int row) {
+            super(store, row);
+        }
     }
 
     //child classes:: Character
@@ -121,7 +225,11 @@ public abstract class GameEntity {
         private Location location;
 
         public Character(String name, String description) {
-            super(name, description);
+            this(WorldStore.shared(), name, description);
+        }
+
+        public Character(WorldStore store, String name, String description) {
+            super(store, name, description, WorldStore.CHARACTER);
         }
 
         public String getName() {
@@ -137,7 +245,3 @@ public abstract class GameEntity {
         }
     }
 }
-
-
-
-
@@ -0,0 +1,13 @@
+package edu.uob;
+
+import java.io.IOException;
+
+//a running listener that GameServer.shutdown can stop in two steps
+public interface GameListener {
+
+    //close the listening socket, connections already open keep being served
+    void stopAccepting() throws IOException;
+
+    //flush whatever replies are still queued and close every connection
+    void closeConnections() throws IOException;
+}
@@ -0,0 +1,91 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+* Runs every command on a single game thread so world updates never interleave,
+* while connection threads only do IO.
+*
+* <p>The queue in front of the game thread is bounded; when it is full the submitting
+* connection thread waits for space.
+*/
+public class GameLogicExecutor implements AutoCloseable {
+    private static final String SHUT_DOWN = "[Error] Game executor is shut down";
+    private static final long QUEUE_POLL_MILLIS = 50;
+
+    private final GameServer server;
+    private final ThreadPoolExecutor executor;
+
+    public GameLogicExecutor(GameServer server, int queueCapacity) {
+        this.server = server;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "stag-game");
+                    thread.setDaemon(true);
+                    return thread;
+                }, GameLogicExecutor::waitForSpace);
+    }
+
+    //queue full: block the connection thread instead of dropping the command
+    private static void waitForSpace(Runnable task, ThreadPoolExecutor pool) {
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException(SHUT_DOWN);
+        }
+        try {
+            //wait in short steps so a shutdown while waiting is noticed
+            while (!pool.getQueue().offer(task, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (pool.isShutdown()) {
+                    throw new RejectedExecutionException(SHUT_DOWN);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("[Error] Interrupted while waiting for the game thread", e);
+        }
+        //the game thread may have exited between the check and the offer, leaving nobody to run it
+        if (pool.isShutdown() && pool.remove(task)) {
+            throw new RejectedExecutionException(SHUT_DOWN);
+        }
+    }
+
+    //run the command on the game thread and wait for its response
+    public String execute(String command) {
+        return this.executeBatch(List.of(command)).get(0);
+    }
+
+    //run pipelined commands as one task on the game thread, responses keep the command order
+    public List<String> executeBatch(List<String> commands) {
+        Future<List<String>> responses;
+        try {
+            responses = executor.submit(() -> server.handleCommands(commands));
+        } catch (RejectedExecutionException e) {
+            return GameLogicExecutor.sameReplyForAll(commands, e.getMessage());
+        }
+        try {
+            return responses.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responses.cancel(false);
+            return GameLogicExecutor.sameReplyForAll(commands, "[Error] Interrupted while processing the command");
+        } catch (ExecutionException e) {
+            return GameLogicExecutor.sameReplyForAll(commands, String.format("[Error] %s", e.getCause().getMessage()));
+        }
+    }
+
+    private static List<String> sameReplyForAll(List<String> commands, String reply) {
+        return new ArrayList<>(Collections.nCopies(commands.size(), reply));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
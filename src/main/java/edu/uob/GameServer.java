@@ -1,19 +1,25 @@
 package edu.uob;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 import edu.uob.CommandProcessor.PlayerDeathException;
@@ -22,15 +28,26 @@ import edu.uob.CommandProcessor.PlayerDeathException;
 
 public final class GameServer {
 
-    private static final char END_OF_TRANSMISSION = 4;
+    public static final int MAX_CACHED_PROCESSORS = 1024;
+
     private final Map<String, GameEntity.Location> locations;
-    private final Map<String, List<GameEntity.Item>> artefacts;
-    private final Map<String, List<GameEntity.Item>> furniture;
-    private final Map<String, List<GameEntity.Item>> characters;
+    private final WorldStore world;
     private List<GameAction> actions;
+    private final ActionIndex actionIndex;
+    //only used inside the synchronized handleCommand
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+    //least recently used processors are dropped past the limit, they only hold scratch space
+    private final LinkedHashMap<Player, CommandProcessor> processors = new LinkedHashMap<>(16, 0.75f, true);
     private final MultiPlayerHandler multiPlayerHandler;
     private final Health health;
     private final BuiltInCommandHandler builtInCommandHandler;
+    private final ResponseFragments responseFragments = new ResponseFragments();
+    private ServerOptions options = new ServerOptions();
+    private final InFlightTracker inFlightTracker = new InFlightTracker();
+    private final Set<GameListener> listeners = ConcurrentHashMap.newKeySet();
+    private volatile Socket blockingConnection;
+    //only set when idle players are passivated
+    private volatile ScheduledExecutorService passivationSweep;
 
     public static void main(String[] args) throws IOException {
         StringBuilder entitiesPath = new StringBuilder();
@@ -41,8 +58,21 @@ public final class GameServer {
         actionsPath.append("config").append(File.separator).append("extended-actions.xml");
         File actionsFile = Paths.get(actionsPath.toString()).toAbsolutePath().toFile();
         
-        GameServer server = new GameServer(entitiesFile, actionsFile);
-        server.blockingListenOn(8888);
+        ServerOptions options = ServerOptions.fromArgs(args);
+        Log.setLevel(options.getLogLevel());
+        GameServer server = new GameServer(entitiesFile, actionsFile, options.createWorldStore());
+        server.setOptions(options);
+        if (options.getHttpPort() > 0) {
+            int httpPort = new HttpGateway(server, options).open(options.getHttpPort());
+            System.out.println(String.format("HTTP gateway listening on port %d", httpPort));
+        }
+        if (options.getMode() == ServerOptions.Mode.SELECTOR) {
+            server.selectorListenOn(8888, options);
+        } else if (options.getMode() == ServerOptions.Mode.THREADS) {
+            server.threadedListenOn(8888, options);
+        } else {
+            server.blockingListenOn(8888);
+        }
     }
 
     /**
@@ -56,6 +86,11 @@ public final class GameServer {
 
     
     public GameServer(File entitiesFile, File actionsFile) {
+        this(entitiesFile, actionsFile, new WorldStore());
+    }
+
+    //entities are loaded into this store, so very large worlds can be kept off-heap
+    public GameServer(File entitiesFile, File actionsFile, WorldStore world) {
         System.out.println("[START] Creating GameServer");
 
         StringBuilder startingLocationHolder = new StringBuilder(); // 
@@ -72,20 +107,18 @@ public final class GameServer {
         }
     
         // parsing dot
-        AnalyzeDot.AnalysisResult analysisResult = AnalyzeDot.analyzeDots(entitiesFile, startingLocationHolder, validWords);
+        AnalyzeDot.AnalysisResult analysisResult = AnalyzeDot.analyzeDots(entitiesFile, startingLocationHolder, validWords, world);
         if (analysisResult == null || analysisResult.locations.isEmpty()) {
             throw new IllegalStateException("[Error] No locations found in entities file");
         }
 
         //initializing map
         this.locations = analysisResult.locations;
-        this.artefacts = analysisResult.artefacts;
-        this.furniture = analysisResult.furniture;
-        this.characters = analysisResult.characters;
+        this.world = analysisResult.world;
         System.out.println("\nLocations List: ");
-        System.out.println(String.format(String.format("[LIST] Artefacts: %s" , artefacts.keySet())));
-        System.out.println(String.format(String.format("[LIST] Furniture: %s" , furniture.keySet())));
-        System.out.println(String.format(String.format("[LIST] Characters: %s" , characters.keySet())));
+        System.out.println(String.format("[LIST] Artefacts: %s" , world.locationsHolding(WorldStore.ARTEFACT)));
+        System.out.println(String.format("[LIST] Furniture: %s" , world.locationsHolding(WorldStore.FURNITURE)));
+        System.out.println(String.format("[LIST] Characters: %s" , world.locationsHolding(WorldStore.CHARACTER)));
 
         Print.printAttributeMap();
 
@@ -98,53 +131,191 @@ public final class GameServer {
         }
 
         this.health = new Health(startingLocation);
-        this.multiPlayerHandler = new MultiPlayerHandler(startingLocation, health);
+        this.multiPlayerHandler = new MultiPlayerHandler(startingLocation, locations, health);
+        multiPlayerHandler.setPassivationListener(processors::remove);
         //this.actions = AnalyzeXML.loadActions(actionsFile, validWords);
 
         Set<String> internalCommands = Set.of("inventory", "inv", "get", "drop", "goto", "look", "health");
-        HandleInputCommand.initializeValidCommands(locations, artefacts, furniture, characters, internalCommands, validTriggers, actions);
+        HandleInputCommand.initializeValidCommands(locations, world, internalCommands, validTriggers, actions);
 
         this.builtInCommandHandler = new BuiltInCommandHandler(locations, multiPlayerHandler, health);
+        this.actionIndex = new ActionIndex(actions, HandleInputCommand.getVocabulary());
+
+        //narrations are returned verbatim, so encode them once for the selector listener
+        for (GameAction action : actions) {
+            responseFragments.register(action.getNarration());
+            action.setPlan(ActionPlan.compile(action, locations));
+        }
+    }
+
+    public WorldStore getWorld() {
+        return world;
+    }
+
+    public ResponseFragments getResponseFragments() {
+        return responseFragments;
     }
 
-    public String handleCommand(String command) {
-        System.out.println(String.format("[COMMAND] Server receives command: %s" , command));
+    //listener settings used by blockingListenOn, which cannot take them as a parameter
+    public void setOptions(ServerOptions options) {
+        this.options = options;
+        if (options.getPlayerIdleTimeoutMillis() > 0) {
+            multiPlayerHandler.setPassivation(new PlayerArchive(GameServer.playerArchiveOf(options)), options.getPlayerIdleTimeoutMillis());
+            this.startPassivationSweep(options.getPlayerIdleTimeoutMillis());
+        }
+    }
+
+    //idle players are found and written out in the background, even when nobody sends commands
+    private void startPassivationSweep(long idleTimeoutMillis) {
+        if (passivationSweep != null) {
+            passivationSweep.shutdownNow();
+        }
+        passivationSweep = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stag-passivation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        passivationSweep.scheduleWithFixedDelay(() -> {
+            try {
+                multiPlayerHandler.passivateIdle(System.currentTimeMillis(), this);
+            } catch (RuntimeException e) {
+                //a failed sweep must not cancel the ones after it
+                Log.error("[Error] Passivation sweep failed: %s", e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static Path playerArchiveOf(ServerOptions options) {
+        if (options.getPlayerArchive() != null) {
+            return options.getPlayerArchive();
+        }
+        try {
+            return Files.createTempDirectory("stag-players");
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("[Error] Unable to create a player archive: %s", e.getMessage()), e);
+        }
+    }
+
+    //active and passivated player counts
+    public MultiPlayerHandler getMultiPlayerHandler() {
+        return multiPlayerHandler;
+    }
+
+    public InFlightTracker getInFlightTracker() {
+        return inFlightTracker;
+    }
+
+    //listeners register while they run so shutdown can reach them
+    public void registerListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregisterListener(GameListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+    * Stops every listener: no new connections or commands are accepted, commands already
+    * in flight may finish until the deadline, their replies are flushed and then all
+    * connections are closed.
+    *
+    * @param deadline How long in-flight commands may take to finish.
+    * @return How many commands were drained and how many were aborted.
+    */
+    public ShutdownReport shutdown(Duration deadline) {
+        inFlightTracker.beginShutdown();
+        for (GameListener listener : listeners) {
+            try {
+                listener.stopAccepting();
+            } catch (IOException e) {
+                System.err.println(String.format("[Error] Unable to stop accepting: %s", e.getMessage()));
+            }
+        }
+
+        try {
+            if (!inFlightTracker.awaitIdle(deadline)) {
+                System.out.println("[Debug] Shutdown deadline passed with commands still in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (GameListener listener : listeners) {
+            try {
+                listener.closeConnections();
+            } catch (IOException e) {
+                System.err.println(String.format("[Error] Unable to close connections: %s", e.getMessage()));
+            }
+        }
+        if (passivationSweep != null) {
+            passivationSweep.shutdownNow();
+        }
+        ShutdownReport report = inFlightTracker.report();
+        System.out.println(report);
+        return report;
+    }
+
+    //listeners may call this from several threads, so world updates are serialized here
+    public synchronized String handleCommand(String command) {
+        Log.debug("[COMMAND] Server receives command: %s", command);
 
         if (command == null || command.isEmpty()) {
             return "[Error] Invalid command format. Please provide a command.";
         }
 
-        List<String> commandParts = new LinkedList<>(List.of(command.split(":", 2)));
-        if (commandParts.size() != 2) {
+        CommandTokenizer.Status status = tokenizer.tokenizeLine(command);
+        if (status == CommandTokenizer.Status.MISSING_PLAYER) {
             return "[Error] Unable to process the command";
         }
-
-        String playerName = commandParts.get(0).trim();
-        String playerCommand = commandParts.get(1).trim();
-        System.out.println(String.format("[Debug] playerName: %s" , playerName , ", Command: %s" , playerCommand));
-
-        if (!isValidPlayerName(playerName)) {
+        if (status == CommandTokenizer.Status.INVALID_PLAYER) {
             return "[Error] Invalid player name";
         }
 
+        String playerName = tokenizer.getPlayerName();
+        Log.debug("[Debug] playerName: %s, Command: %s", playerName, command);
+
         Player player = multiPlayerHandler.getOrCreatePlayer(playerName);
-        System.out.println(String.format("[Debug] Creative players: %s" , player.getName()));
+        Log.debug("[Debug] Creative players: %s", player.getName());
 
-        CommandProcessor commandProcessor = new CommandProcessor(player, actions, locations, builtInCommandHandler, health);
-        System.out.println("\n[Debug] Starting CommandProcessor");
+        CommandProcessor commandProcessor = this.processorFor(player);
+        Log.debug("\n[Debug] Starting CommandProcessor");
 
         try {
-            String response = commandProcessor.processCommand(playerCommand);
-            System.out.println(String.format("[RESPONSE] ProcessCommand response: %s" , response));
+            String response = commandProcessor.processCommand(tokenizer);
+            Log.debug("[RESPONSE] ProcessCommand response: %s", response);
             return response;
         } catch (PlayerDeathException e) {
             return e.getMessage();
         }
     }
 
-    private boolean isValidPlayerName(String playerName) {
-        String validPattern = "^[a-zA-Z0-9_'\\-@]+$";
-        return playerName.matches(validPattern);
+    //one processor per recently active player, created on their first command and reused after that
+    private CommandProcessor processorFor(Player player) {
+        CommandProcessor processor = processors.get(player);
+        if (processor == null) {
+            processor = new CommandProcessor(player, actionIndex, locations, builtInCommandHandler, health);
+            processors.put(player, processor);
+            if (processors.size() > MAX_CACHED_PROCESSORS) {
+                Iterator<CommandProcessor> eldest = processors.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return processor;
+    }
+
+    int getCachedProcessorCount() {
+        return processors.size();
+    }
+
+    //handle pipelined commands in one pass, responses are in the same order as the commands
+    public synchronized List<String> handleCommands(List<String> commands) {
+        List<String> responses = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            responses.add(this.handleCommand(command));
+        }
+        return responses;
     }
 
     /**
@@ -155,18 +326,69 @@ public final class GameServer {
     * @throws IOException If any IO related operation fails.
     */
     public void blockingListenOn(int portNumber) throws IOException {
-        try (ServerSocket s = new ServerSocket(portNumber)) {
-            System.out.println(String.format("Server listening on port " , portNumber));
-            while (!Thread.interrupted()) {
+        //not try-with-resources: shutdown closes the socket from another thread to stop accepting
+        ServerSocket s = new ServerSocket(portNumber, options.getAcceptBacklog());
+        System.out.println(String.format("Server listening on port %d", portNumber));
+        if (options.getSessionIdleTimeoutMillis() > 0) {
+            Log.warn("[Warning] Sessions need --mode=threads or --mode=selector, the blocking listener answers one request per connection");
+        }
+        GameListener blockingListener = new GameListener() {
+            @Override
+            public void stopAccepting() throws IOException {
+                s.close();
+            }
+
+            @Override
+            public void closeConnections() throws IOException {
+                Socket connection = blockingConnection;
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        };
+        this.registerListener(blockingListener);
+        try {
+            while (!Thread.interrupted() && !inFlightTracker.isShuttingDown()) {
                 try {
                     this.blockingHandleConnection(s);
                 } catch (IOException e) {
-                    System.out.println("Connection closed");
+                    Log.info("Connection closed");
                 }
             }
+        } finally {
+            this.unregisterListener(blockingListener);
+            s.close();
         }
     }
 
+    /**
+    * Starts a non-blocking selector server, see {@link SelectorServer}.
+    *
+    * @param portNumber The port to listen on.
+    * @param options Listener settings such as the number of IO threads.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void selectorListenOn(int portNumber, ServerOptions options) throws IOException {
+        SelectorServer selectorServer = new SelectorServer(this, options);
+        int boundPort = selectorServer.open(portNumber);
+        System.out.println(String.format("Selector server listening on port %d with %d IO threads", boundPort, options.getIoThreads()));
+        selectorServer.run();
+    }
+
+    /**
+    * Starts a thread-per-connection server, see {@link ThreadedServer}.
+    *
+    * @param portNumber The port to listen on.
+    * @param options Listener settings such as the game queue capacity.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void threadedListenOn(int portNumber, ServerOptions options) throws IOException {
+        ThreadedServer threadedServer = new ThreadedServer(this, options);
+        int boundPort = threadedServer.open(portNumber);
+        System.out.println(String.format("Threaded server listening on port %d", boundPort));
+        threadedServer.run();
+    }
+
     /**
     * Do not change the following method signature or we won't be able to mark your submission
     * Handles an incoming connection from the socket server.
@@ -175,18 +397,14 @@ public final class GameServer {
     * @throws IOException If any IO related operation fails.
     */
     private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
-            System.out.println("Connection established");
-            String incomingCommand = reader.readLine();
-            if(incomingCommand != null) {
-                System.out.println(String.format("Received message from ",incomingCommand));
-                String result = this.handleCommand(incomingCommand);
-                writer.write(result);
-                writer.write(String.format("\n" , END_OF_TRANSMISSION , "\n"));
-                writer.flush();
-            }
+        try (Socket s = serverSocket.accept()) {
+            Log.info("Connection established");
+            blockingConnection = s;
+            //no session here: one connection at a time, so an idle session would hold up every other player,
+            //and no admission control either since a single connection can never exceed it
+            StreamConnection.serve(s, this::handleCommands, 0, inFlightTracker);
+        } finally {
+            blockingConnection = null;
         }
     }
 }
\ No newline at end of file
@@ -7,53 +7,99 @@ public class HandleInputCommand {
     // Built-in instruction set
     private static final Set<String> HandleInputCommands = new HashSet<>(Set.of("inventory", "inv", "get", "drop", "goto", "look", "health"));
 
-    private static Map<String, GameEntity.Location> locations = new HashMap<>();
-    private static Map<String, List<GameEntity.Item>> artefacts = new HashMap<>();
-    private static Map<String, List<GameEntity.Item>> furniture = new HashMap<>();
-    private static Map<String, List<GameEntity.Item>> characters = new HashMap<>();
-    private static final Set<String> validTriggers = new HashSet<>();
+    private static final int[] OBJECT_CATEGORIES = {Vocabulary.SUBJECT, Vocabulary.CONSUMED, Vocabulary.PRODUCED};
 
-    //for storing all game actions
-    private static final LinkedList<GameAction> actions = new LinkedList<>();
+    //every trigger, entity and location name as an int ID, compiled when the game files are loaded
+    private static volatile Vocabulary vocabulary = new Vocabulary();
+    private static volatile KeyphraseMatcher keyphraseMatcher = new KeyphraseMatcher(vocabulary);
+    private static final CommandCache commandCache = new CommandCache(CommandCache.DEFAULT_CAPACITY);
 
     //clear old game data
-    public static void initializeValidCommands(Map<String, GameEntity.Location> loc, Map<String, List<GameEntity.Item>> art,
-                                               Map<String, List<GameEntity.Item>> fur, Map<String, List<GameEntity.Item>> cha,
+    public static void initializeValidCommands(Map<String, GameEntity.Location> loc, WorldStore world,
                                                Set<String> newInternalCommands, Set<String> newValidTriggers,
                                                List<GameAction> newActions) {
 
-        actions.clear();
-        actions.addAll(newActions);
-
-        validTriggers.clear();
-        validTriggers.addAll(newValidTriggers);
-
         HandleInputCommands.clear();
         HandleInputCommands.addAll(newInternalCommands);
 
-        locations = loc;
-        artefacts = art;
-        furniture = fur;
-        characters = cha;
+        //valid game words first, then what role they play in the actions file
+        Vocabulary words = new Vocabulary();
+        for (String location : loc.keySet()) {
+            words.intern(location, Vocabulary.LOCATION);
+        }
+        for (String entity : world.names(WorldStore.ENTITIES)) {
+            words.intern(entity, Vocabulary.ENTITY);
+        }
+        for (String command : newInternalCommands) {
+            words.intern(command, Vocabulary.BUILT_IN);
+        }
+        for (String trigger : newValidTriggers) {
+            words.intern(trigger, Vocabulary.TRIGGER);
+        }
+        for (GameAction action : newActions) {
+            action.getSubjects().forEach(subject -> words.mark(subject, Vocabulary.SUBJECT));
+            action.getConsumed().forEach(consumed -> words.mark(consumed, Vocabulary.CONSUMED));
+            action.getProduced().forEach(produced -> words.mark(produced, Vocabulary.PRODUCED));
+        }
+        keyphraseMatcher = new KeyphraseMatcher(words);
+        vocabulary = words;
+        commandCache.invalidate();
+    }
+
+    public static CommandCache getCommandCache() {
+        return commandCache;
+    }
+
+    public static Vocabulary getVocabulary() {
+        return vocabulary;
     }
 
 
     //parsing player input commands
     public static Command parseCommand(String input) {
-        if (input == null || input.trim().isEmpty()) {
+        if (input == null) {
             return new Command("[Error] Null command or invalid input received", new LinkedList<>());
         }
-    
-        System.out.println(String.format("[Debug] original command: %s", input));
+        Log.debug("[Debug] original command: %s", input);
+        CommandTokenizer tokens = new CommandTokenizer();
+        tokens.tokenizeCommand(input);
+        return HandleInputCommand.parseCommand(tokens);
+    }
 
-        String cleanedInput = input.trim().replaceAll("^\\w+:\\s*", "");
-    
-        //cut command
-        List<String> words = new LinkedList<>(List.of(cleanedInput.trim().toLowerCase().split("\\s+")));
+    //parsing a command that has already been split into lower-case words
+    public static Command parseCommand(CommandTokenizer tokens) {
+        return HandleInputCommand.parseCommand(tokens, new KeyphraseMatcher.Matches());
+    }
+
+    //same, reusing the caller's match buffers; repeated commands come straight from the cache
+    public static Command parseCommand(CommandTokenizer tokens, KeyphraseMatcher.Matches matches) {
+        if (tokens.isBlank()) {
+            return new Command("[Error] Null command or invalid input received", new LinkedList<>());
+        }
+
+        //one snapshot for the cache key and the parse, so a reload in between cannot mix two vocabularies
+        KeyphraseMatcher matcher = keyphraseMatcher;
+        Vocabulary current = matcher.getVocabulary();
+        String normalized = tokens.normalized();
+        Command cached = commandCache.get(current, normalized);
+        if (cached != null) {
+            return cached;
+        }
+        Command parsed = HandleInputCommand.parseNormalized(tokens, matches, matcher, current);
+        commandCache.put(current, normalized, parsed);
+        return parsed;
+    }
 
-        //retain valid game words
-        words = HandleInputCommand.filterWordsUsingMaps(words);
-        System.out.println(String.format("[Debug] retain valid game words: %s", words));
+    private static Command parseNormalized(CommandTokenizer tokens, KeyphraseMatcher.Matches matches,
+                                           KeyphraseMatcher matcher, Vocabulary current) {
+
+        //retain valid game words and phrases, found in one pass over the command
+        matcher.scan(tokens.chars(), tokens.length(), matches);
+        List<String> words = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            words.add(matches.phrase(i));
+        }
+        Log.debug("[Debug] retain valid game words: %s", words);
     
         if (words.isEmpty()) {
             return new Command("[Error] No single words are valid", new LinkedList<>());
@@ -62,90 +108,71 @@ public class HandleInputCommand {
         //check HandleInputCommands
         String firstWord = words.get(0);
         if (HandleInputCommands.contains(firstWord)) {
-            System.out.println(String.format("[Debug] Match built-in commands %s", firstWord));
-            return new Command(firstWord, words.subList(1, words.size()));
+            Log.debug("[Debug] Match built-in commands %s", firstWord);
+            return new Command(firstWord, List.copyOf(words.subList(1, words.size())));
         }
 
-        Map<String, List<String>> attributeMap = AnalyzeXML.getAttributeMap();
-
-        String matchedTrigger = null;
-        List<String> matchedSubjects = new LinkedList<>();
-        List<String> matchedConsumed = new LinkedList<>();
-        List<String> matchedProduced = new LinkedList<>();
+        int matchedTrigger = Vocabulary.UNKNOWN;
 
         //check triggers
-        for (String word : words) {
-            if (attributeMap.get("triggers").contains(word)) {
-                matchedTrigger = word;
-                System.out.println(String.format("[Debug] Match to trigger: %s", word));
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.is(i, Vocabulary.TRIGGER)) {
+                matchedTrigger = matches.id(i);
+                Log.debug("[Debug] Match to trigger: %s", matches.phrase(i));
                 break;
             }
         }
 
-        if (matchedTrigger == null) {
+        if (matchedTrigger == Vocabulary.UNKNOWN) {
             return new Command("[Error] Invalid command", new LinkedList<>());
         }
     
-        // check Subjects Consumed Produced
-        for (String word : words) {
-            if (attributeMap.get("subjects").contains(word)) {
-                matchedSubjects.add(word);
-            } else if (attributeMap.get("consumed").contains(word)) {
-                matchedConsumed.add(word);
-            } else if (attributeMap.get("produced").contains(word)) {
-                matchedProduced.add(word);
+        // check Subjects Consumed Produced, as IDs so the processor can match actions without strings
+        int[] objectIds = new int[matches.size()];
+        int objectCount = 0;
+        for (int category : OBJECT_CATEGORIES) {
+            for (int i = 0; i < matches.size(); i++) {
+                if (HandleInputCommand.objectCategory(matches, i) == category) {
+                    objectIds[objectCount++] = matches.id(i);
+                }
             }
         }
 
-        List<String> objects = new LinkedList<>();
-        objects.addAll(matchedSubjects);
-        objects.addAll(matchedConsumed);
-        objects.addAll(matchedProduced);
-    
-        return new Command(matchedTrigger, objects);
-    }
-    
-    
-
-
-    //use Map data and built-in commands to filter for valid words
-    public static List<String> filterWordsUsingMaps(List<String> words) {
-        List<String> filteredWords = new LinkedList<>();
-        for (String word : words) {
-            boolean isValidWord = locations.containsKey(word) || HandleInputCommand.containsInEntityMap(word, artefacts) ||
-            HandleInputCommand.containsInEntityMap(word, furniture) || HandleInputCommand.containsInEntityMap(word, characters) ||
-                    HandleInputCommands.contains(word)|| validTriggers.contains(word);
-
-            if (isValidWord) {
-                filteredWords.add(word);
-            } else {
-                System.out.println(String.format("[Debug] Invalid word: %s (filtered)", word));
-            }
+        List<String> objects = new ArrayList<>(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            objects.add(current.word(objectIds[i]));
         }
-        return filteredWords;
+    
+        return new Command(current.word(matchedTrigger), objects, matchedTrigger, Arrays.copyOf(objectIds, objectCount));
     }
 
-
-    //checks if it exists in a specific Map value
-    private static boolean containsInEntityMap(String word, Map<String, List<GameEntity.Item>> entityMap) {
-        for (List<GameEntity.Item> itemList : entityMap.values()) {
-            for (GameEntity.Item entity : itemList) {
-                if (entity.getName().equalsIgnoreCase(word)) {
-                    return true;
-                }
+    //a word counts as a subject before consumed before produced, 0 if it is none of them
+    private static int objectCategory(KeyphraseMatcher.Matches matches, int index) {
+        for (int category : OBJECT_CATEGORIES) {
+            if (matches.is(index, category)) {
+                return category;
             }
         }
-        return false;
+        return 0;
     }
 
 
+    //immutable, parsed commands are cached and shared between players
     public static class Command {
         private final String command;
         private final List<String> object;
+        private final int commandId;
+        private final int[] objectIds;
 
         public Command(String command, List<String> object) {
+            this(command, object, Vocabulary.UNKNOWN, new int[0]);
+        }
+
+        public Command(String command, List<String> object, int commandId, int[] objectIds) {
             this.command = command;
-            this.object = object;
+            this.object = Collections.unmodifiableList(object);
+            this.commandId = commandId;
+            this.objectIds = objectIds;
         }
 
         public String getCommand() {
@@ -155,5 +182,15 @@ public class HandleInputCommand {
         public List<String> getObject() {
             return object;
         }
+
+        //vocabulary ID of the trigger, Vocabulary.UNKNOWN for built-in and error commands
+        public int getCommandId() {
+            return commandId;
+        }
+
+        //shared by every use of a cached command, so callers must not modify it
+        public int[] getObjectIds() {
+            return objectIds;
+        }
     }
 }
@@ -1,12 +1,10 @@
 package edu.uob;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Health {
     private static final int MAX_HEALTH = 3;
     private static final int MIN_HEALTH = 0;
-    private final Map<String, Integer> playerHealth;
+    //indexed by player ID, so no boxing or name hashing per health change
+    private final PlayerStats playerStats;
     private final GameEntity.Location startingLocation;
 
     public GameEntity.Location getStartingLocation() {
@@ -15,28 +13,28 @@ public class Health {
     
     public Health(GameEntity.Location startingLocation) {
         this.startingLocation = startingLocation;
-        this.playerHealth = new HashMap<>();
+        this.playerStats = new PlayerStats();
+    }
+
+    public PlayerStats getPlayerStats() {
+        return playerStats;
     }
 
     //initialize player life value
-    public void initializeHealth(String playerName) {
-        playerHealth.put(playerName, MAX_HEALTH);
+    public void initializeHealth(Player player) {
+        playerStats.ensurePlayer(player.getId());
+        playerStats.set(player.getId(), PlayerStats.HEALTH, MAX_HEALTH);
     }
 
     //get the current player's life value
-    public int getHealth(String playerName) {
-        if (!playerHealth.containsKey(playerName)) {
-            System.err.println(String.format("[Error] Player health not found: " , playerName));
-        }
-        return playerHealth.getOrDefault(playerName, MAX_HEALTH);
+    public int getHealth(Player player) {
+        return playerStats.get(player.getId(), PlayerStats.HEALTH);
     }
 
     //modify player's life value
-    public String modifyHealth(String playerName, int delta) {
-        int currentHealth = this.getHealth(playerName);
-        int newHealth = Math.min(MAX_HEALTH, Math.max(MIN_HEALTH, currentHealth + delta));
-        
-        playerHealth.put(playerName, newHealth);
+    public String modifyHealth(Player player, int delta) {
+        int newHealth = playerStats.addClamped(player.getId(), PlayerStats.HEALTH, delta, MIN_HEALTH, MAX_HEALTH);
+
         //if health is 0 return death message
         if (newHealth == MIN_HEALTH) {
             return "You're dead";
@@ -46,24 +44,24 @@ public class Health {
     }
 
     public static void handlePlayerDeath(Player player, Health health) {
-        System.out.println("[START] Enter handlePlayerDeath");
+        Log.debug("[START] Enter handlePlayerDeath");
 
-        if (health.getHealth(player.getName()) == 0) {
+        if (health.getHealth(player) == 0) {
 
             //dropping all player's items
             for (GameEntity item : player.getInventory()) {
                 player.getLocation().addItem(item);
-                System.out.println(String.format("[Debug] Drop item %s to %s", item.getName(), player.getLocation().getName()));
+                Log.debug("[Debug] Drop item %s to %s", item.getName(), player.getLocation().getName());
             }
             player.getInventory().clear();
 
             //transport the player to the starting location
             player.setLocation(health.getStartingLocation());
-            System.out.println(String.format("[Debug] player %s be transported to %s", player.getName(), health.getStartingLocation().getName()));
+            Log.debug("[Debug] player %s be transported to %s", player.getName(), health.getStartingLocation().getName());
 
             //reset Health
-            health.initializeHealth(player.getName());
-            System.out.println(String.format("[Debug] Reset Health to %d", health.getHealth(player.getName())));
+            health.initializeHealth(player);
+            Log.debug("[Debug] Reset Health to %d", health.getHealth(player));
 
         }
     }
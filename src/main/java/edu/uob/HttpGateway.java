@@ -0,0 +1,174 @@
+package edu.uob;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+* Optional HTTP/JSON front door for clients that cannot speak the socket protocol.
+*
+* <p>{@code POST /command} takes {@code {"player": "...", "command": "..."}} and answers
+* {@code {"response": "..."}}. {@code POST /batch} takes an array of such objects and
+* answers {@code {"responses": [...]}} in the same order. Requests go through the same
+* admission control and {@code handleCommands} path as the socket listeners, on
+* (virtual when available) per-request threads.
+*/
+public class HttpGateway implements GameListener {
+
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final GameServer server;
+    private final ServerOptions options;
+    private final AdmissionControl admissionControl;
+    private final InFlightTracker tracker;
+    //cleared by stopAccepting, after which new requests get a 503
+    private volatile boolean accepting = true;
+    private ExecutorService requestThreads;
+    private HttpServer httpServer;
+
+    public HttpGateway(GameServer server, ServerOptions options) {
+        this.server = server;
+        this.options = options;
+        this.admissionControl = new AdmissionControl(options);
+        this.tracker = server.getInFlightTracker();
+    }
+
+    //bind and start serving in the background, returns the bound port (useful with port 0)
+    public int open(int portNumber) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(portNumber), options.getAcceptBacklog());
+        httpServer.createContext("/command", exchange -> this.handle(exchange, false));
+        httpServer.createContext("/batch", exchange -> this.handle(exchange, true));
+        requestThreads = VirtualThreads.newThreadPerTaskExecutor("stag-http");
+        httpServer.setExecutor(requestThreads);
+        httpServer.start();
+        server.registerListener(this);
+        return httpServer.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, boolean batch) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                HttpGateway.send(exchange, 405, HttpGateway.errorBody("Only POST is supported"));
+                return;
+            }
+
+            List<String> commands;
+            try {
+                Object request = Json.parse(HttpGateway.readBody(exchange.getRequestBody()));
+                commands = batch ? HttpGateway.toCommands(request) : List.of(HttpGateway.toCommand(request));
+            } catch (IllegalArgumentException e) {
+                HttpGateway.send(exchange, 400, HttpGateway.errorBody(e.getMessage()));
+                return;
+            }
+
+            if (!accepting || !tracker.tryBegin(commands.size())) {
+                HttpGateway.send(exchange, 503, HttpGateway.errorBody(InFlightTracker.SHUTTING_DOWN_RESPONSE));
+                return;
+            }
+            try {
+                List<String> responses = admissionControl.run(commands, server::handleCommands);
+                HttpGateway.send(exchange, 200, batch ? HttpGateway.batchBody(responses) : HttpGateway.commandBody(responses.get(0)));
+            } finally {
+                tracker.end(commands.size());
+            }
+        }
+    }
+
+    private static String readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("[Error] Request body too large");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //{"player": "...", "command": "..."} as a "player: command" line
+    private static String toCommand(Object request) {
+        if (!(request instanceof Map)) {
+            throw new IllegalArgumentException("[Error] Expected a JSON object with player and command");
+        }
+        Map<?, ?> fields = (Map<?, ?>) request;
+        Object player = fields.get("player");
+        Object command = fields.get("command");
+        if (!(player instanceof String) || !(command instanceof String)) {
+            throw new IllegalArgumentException("[Error] player and command must both be strings");
+        }
+        return BinaryProtocol.toCommandLine((String) player, (String) command);
+    }
+
+    private static List<String> toCommands(Object request) {
+        if (!(request instanceof List) || ((List<?>) request).isEmpty()) {
+            throw new IllegalArgumentException("[Error] Expected a non-empty JSON array of commands");
+        }
+        List<String> commands = new ArrayList<>();
+        for (Object item : (List<?>) request) {
+            commands.add(HttpGateway.toCommand(item));
+        }
+        return commands;
+    }
+
+    private static String commandBody(String response) {
+        return String.format("{\"response\":%s}", Json.quote(response));
+    }
+
+    private static String batchBody(List<String> responses) {
+        StringBuilder body = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < responses.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(Json.quote(responses.get(i)));
+        }
+        return body.append("]}").toString();
+    }
+
+    private static String errorBody(String message) {
+        return String.format("{\"error\":%s}", Json.quote(message));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    //requests arriving after this point are refused with a 503, the ones already running finish
+    @Override
+    public void stopAccepting() {
+        accepting = false;
+        System.out.println("HTTP gateway refusing new commands");
+    }
+
+    //by now the in-flight requests have been answered, so the listener can go at once
+    @Override
+    public void closeConnections() {
+        this.close();
+    }
+
+    public void close() {
+        server.unregisterListener(this);
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (requestThreads != null) {
+            requestThreads.shutdown();
+        }
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+}
@@ -0,0 +1,67 @@
+package edu.uob;
+
+import java.time.Duration;
+
+/**
+* Counts the commands the listeners are working on, so a shutdown can wait for them.
+*
+* <p>A listener calls {@link #tryBegin} before handling a batch and {@link #end} once
+* the replies are written. After {@link #beginShutdown} new batches are refused.
+*/
+public class InFlightTracker {
+    public static final String SHUTTING_DOWN_RESPONSE = "[Error] Server is shutting down";
+
+    private int inFlight;
+    private boolean shuttingDown;
+    private long drained;
+    private long refused;
+
+    public synchronized boolean tryBegin(int commands) {
+        if (shuttingDown) {
+            refused += commands;
+            return false;
+        }
+        inFlight += commands;
+        return true;
+    }
+
+    public synchronized void end(int commands) {
+        inFlight -= commands;
+        if (shuttingDown) {
+            drained += commands;
+        }
+        if (inFlight == 0) {
+            this.notifyAll();
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    public synchronized void beginShutdown() {
+        shuttingDown = true;
+    }
+
+    //wait until nothing is in flight or the deadline passes, true if everything finished
+    public synchronized boolean awaitIdle(Duration deadline) throws InterruptedException {
+        long end = System.nanoTime() + deadline.toNanos();
+        while (inFlight > 0) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            this.wait(Math.max(1, remaining / 1_000_000));
+        }
+        return true;
+    }
+
+    //commands still running count as aborted, as do the ones refused during shutdown
+    public synchronized ShutdownReport report() {
+        return new ShutdownReport(drained, inFlight + refused);
+    }
+}
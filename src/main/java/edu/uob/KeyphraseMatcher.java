@@ -0,0 +1,204 @@
+package edu.uob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+* Aho-Corasick automaton over every phrase in a {@link Vocabulary}: trigger keyphrases,
+* entity, location and built-in command names.
+*
+* <p>Built once when the game files are loaded. {@link #scan} walks the normalized command
+* (lower-case words separated by single spaces, as {@link CommandTokenizer} leaves it)
+* once and reports whole-word phrases, preferring the longest phrase at a position and
+* never overlapping two, so "cut down tree" yields "cut down" rather than "cut".
+*/
+public final class KeyphraseMatcher {
+
+    private static final int ROOT = 0;
+
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    //phrase ending exactly at this node, or -1
+    private final int[] phraseAt;
+    //nearest node on the fail chain that ends a phrase, or ROOT for none
+    private final int[] outputLink;
+    private final Vocabulary vocabulary;
+    private final int[] phraseLengths;
+
+    //one phrase per vocabulary ID, reported under that ID
+    public KeyphraseMatcher(Vocabulary vocabulary) {
+        this.vocabulary = vocabulary;
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        children.add(new TreeMap<>());
+        int[] terminals = new int[vocabulary.size()];
+        phraseLengths = new int[vocabulary.size()];
+        for (int phrase = 0; phrase < vocabulary.size(); phrase++) {
+            String word = vocabulary.word(phrase);
+            int node = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                Integer child = children.get(node).get(word.charAt(i));
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<>());
+                    children.get(node).put(word.charAt(i), child);
+                }
+                node = child;
+            }
+            terminals[phrase] = node;
+            phraseLengths[phrase] = word.length();
+        }
+
+        int nodeCount = children.size();
+        labels = new char[nodeCount][];
+        targets = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            TreeMap<Character, Integer> nodeChildren = children.get(node);
+            labels[node] = new char[nodeChildren.size()];
+            targets[node] = new int[nodeChildren.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> child : nodeChildren.entrySet()) {
+                labels[node][i] = child.getKey();
+                targets[node][i++] = child.getValue();
+            }
+        }
+        phraseAt = new int[nodeCount];
+        Arrays.fill(phraseAt, -1);
+        for (int phrase = 0; phrase < terminals.length; phrase++) {
+            phraseAt[terminals[phrase]] = phrase;
+        }
+
+        //breadth first, so a node's fail target is always finished before the node itself
+        fail = new int[nodeCount];
+        outputLink = new int[nodeCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < labels[node].length; i++) {
+                int child = targets[node][i];
+                int state = fail[node];
+                int next = this.next(state, labels[node][i]);
+                while (state != ROOT && next < 0) {
+                    state = fail[state];
+                    next = this.next(state, labels[node][i]);
+                }
+                fail[child] = next < 0 ? ROOT : next;
+                outputLink[child] = phraseAt[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        char[] nodeLabels = labels[node];
+        for (int i = 0; i < nodeLabels.length; i++) {
+            if (nodeLabels[i] == c) {
+                return targets[node][i];
+            }
+        }
+        return -1;
+    }
+
+    //the vocabulary whose IDs scan reports
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    //find the whole-word phrases in text[0, length), leftmost-longest and non-overlapping
+    public Matches scan(char[] text, int length, Matches matches) {
+        matches.reset(this, length);
+        int node = ROOT;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            int next = this.next(node, c);
+            while (node != ROOT && next < 0) {
+                node = fail[node];
+                next = this.next(node, c);
+            }
+            node = next < 0 ? ROOT : next;
+
+            int end = i + 1;
+            if (end != length && text[end] != ' ') {
+                continue;
+            }
+            for (int out = phraseAt[node] >= 0 ? node : outputLink[node]; out != ROOT; out = outputLink[out]) {
+                int phrase = phraseAt[out];
+                int start = end - phraseLengths[phrase];
+                if (start == 0 || text[start - 1] == ' ') {
+                    matches.offer(start, phrase);
+                }
+            }
+        }
+        matches.select();
+        return matches;
+    }
+
+    /**
+    * Reusable result of {@link #scan}: the chosen phrases in input order.
+    */
+    public static final class Matches {
+        private KeyphraseMatcher matcher;
+        //longest phrase starting at each position, -1 for none
+        private int[] bestAt = new int[64];
+        private int[] chosen = new int[16];
+        private int count;
+        private int length;
+
+        private void reset(KeyphraseMatcher matcher, int length) {
+            this.matcher = matcher;
+            this.length = length;
+            this.count = 0;
+            if (bestAt.length < length) {
+                bestAt = new int[Math.max(length, bestAt.length * 2)];
+            }
+            Arrays.fill(bestAt, 0, length, -1);
+        }
+
+        private void offer(int start, int phrase) {
+            int best = bestAt[start];
+            if (best < 0 || matcher.phraseLengths[phrase] > matcher.phraseLengths[best]) {
+                bestAt[start] = phrase;
+            }
+        }
+
+        private void select() {
+            int free = 0;
+            for (int start = 0; start < length; start++) {
+                int phrase = bestAt[start];
+                if (start < free || phrase < 0) {
+                    continue;
+                }
+                if (count == chosen.length) {
+                    chosen = Arrays.copyOf(chosen, count * 2);
+                }
+                chosen[count++] = phrase;
+                free = start + matcher.phraseLengths[phrase];
+            }
+        }
+
+        public int size() {
+            return count;
+        }
+
+        //vocabulary ID of the index-th phrase
+        public int id(int index) {
+            return chosen[index];
+        }
+
+        public String phrase(int index) {
+            return matcher.vocabulary.word(chosen[index]);
+        }
+
+        public boolean is(int index, int category) {
+            return matcher.vocabulary.is(chosen[index], category);
+        }
+    }
+}
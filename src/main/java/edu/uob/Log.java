@@ -0,0 +1,196 @@
+package edu.uob;
+
+import java.io.PrintStream;
+import java.util.IllegalFormatException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+* Levelled logging for the per-command paths, in place of {@code System.out.println(String.format(...))}.
+*
+* <p>A call below the current level returns after one volatile read, without formatting
+* or allocating (the fixed-arity overloads avoid a varargs array). Enabled calls claim a
+* slot in a bounded lock-free ring with one CAS and store the format and its arguments;
+* a daemon thread formats and prints them in order. Arguments are therefore formatted
+* later and should not be mutated after the call. When the ring is full the message is
+* dropped and counted rather than blocking the game.
+*/
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static volatile Level level = Level.INFO;
+
+    //a slot holds a message once sequences[slot] == position + 1, and is free again at position + CAPACITY
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final Level[] levels = new Level[CAPACITY];
+    private static final String[] formats = new String[CAPACITY];
+    private static final Object[][] arguments = new Object[CAPACITY][];
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    //only touched by the writer thread, published for flush()
+    private static volatile long head;
+
+    static {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            sequences.set(slot, slot);
+        }
+        Thread writer = new Thread(Log::drain, "stag-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Log.flush(1000), "stag-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0 && messageLevel != Level.OFF;
+    }
+
+    public static boolean isDebugEnabled() {
+        return Log.isEnabled(Level.DEBUG);
+    }
+
+    public static void debug(String message) {
+        if (Log.isEnabled(Level.DEBUG)) {
+            Log.publish(Level.DEBUG, message, null);
+        }
+    }
+
+    public static void debug(String format, Object arg) {
+        if (Log.isEnabled(Level.DEBUG)) {
+            Log.publish(Level.DEBUG, format, new Object[] {arg});
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (Log.isEnabled(Level.DEBUG)) {
+            Log.publish(Level.DEBUG, format, new Object[] {arg1, arg2});
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2, Object arg3) {
+        if (Log.isEnabled(Level.DEBUG)) {
+            Log.publish(Level.DEBUG, format, new Object[] {arg1, arg2, arg3});
+        }
+    }
+
+    public static void info(String message) {
+        if (Log.isEnabled(Level.INFO)) {
+            Log.publish(Level.INFO, message, null);
+        }
+    }
+
+    public static void info(String format, Object arg) {
+        if (Log.isEnabled(Level.INFO)) {
+            Log.publish(Level.INFO, format, new Object[] {arg});
+        }
+    }
+
+    public static void warn(String message) {
+        if (Log.isEnabled(Level.WARN)) {
+            Log.publish(Level.WARN, message, null);
+        }
+    }
+
+    public static void error(String message) {
+        if (Log.isEnabled(Level.ERROR)) {
+            Log.publish(Level.ERROR, message, null);
+        }
+    }
+
+    public static void error(String format, Object arg) {
+        if (Log.isEnabled(Level.ERROR)) {
+            Log.publish(Level.ERROR, format, new Object[] {arg});
+        }
+    }
+
+    //messages lost because the writer could not keep up
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private static void publish(Level messageLevel, String format, Object[] args) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) (position & MASK);
+            long available = sequences.get(slot) - position;
+            if (available < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (available == 0 && tail.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+        levels[slot] = messageLevel;
+        formats[slot] = format;
+        arguments[slot] = args;
+        sequences.set(slot, position + 1);
+    }
+
+    private static void drain() {
+        long position = 0;
+        long idleNanos = 1;
+        while (true) {
+            int slot = (int) (position & MASK);
+            if (sequences.get(slot) != position + 1) {
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(MAX_IDLE_NANOS, idleNanos * 2 + 1000);
+                continue;
+            }
+            idleNanos = 1;
+            Level messageLevel = levels[slot];
+            String format = formats[slot];
+            Object[] args = arguments[slot];
+            formats[slot] = null;
+            arguments[slot] = null;
+            sequences.set(slot, position + CAPACITY);
+            position++;
+
+            Log.write(messageLevel, format, args);
+            head = position;
+        }
+    }
+
+    private static void write(Level messageLevel, String format, Object[] args) {
+        String message;
+        try {
+            message = args == null ? format : String.format(format, args);
+        } catch (IllegalFormatException e) {
+            message = format;
+        }
+        PrintStream out = messageLevel.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+        out.println(message);
+    }
+
+    //wait until everything logged so far has been written, false if the timeout passed first
+    public static boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (head < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+}
@@ -1,35 +1,204 @@
 package edu.uob;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class MultiPlayerHandler {
-    private final Map<String, Player> players = new HashMap<>();
+    //active players only; idle ones are passivated to the archive when one is configured
+    private final Map<String, Player> players = new ConcurrentHashMap<>();
     private final GameEntity.Location startingLocation;
+    private final Map<String, GameEntity.Location> locations;
     private final Health health;
+    //next dense player ID, and IDs given back by passivated players for reuse
+    private int nextPlayerId;
+    private int[] freeIds = new int[16];
+    private int freeIdCount;
+
+    private PlayerArchive archive;
+    private volatile long idleTimeoutMillis;
+    private Consumer<Player> passivationListener = player -> { };
 
     public MultiPlayerHandler(GameEntity.Location startingLocation, Health health) {
+        this(startingLocation, Map.of(startingLocation.getName(), startingLocation), health);
+    }
+
+    //locations let a reactivated player return to where they were
+    public MultiPlayerHandler(GameEntity.Location startingLocation, Map<String, GameEntity.Location> locations, Health health) {
         this.startingLocation = startingLocation;
+        this.locations = locations;
         this.health = health;
     }
 
-    //creative players
+    //passivate players idle for longer than idleTimeoutMillis into this archive, 0 turns it off
+    public synchronized void setPassivation(PlayerArchive archive, long idleTimeoutMillis) {
+        this.archive = archive;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    //told about each passivated player, e.g. to drop per-player caches
+    public void setPassivationListener(Consumer<Player> passivationListener) {
+        this.passivationListener = passivationListener;
+    }
+
+    //creative players; the sweep takes the game lock too, so nobody is passivated mid-command
     public Player getOrCreatePlayer(String playerName) {
-        //Check if the player already exists
-        if (!players.containsKey(playerName)) {
-            System.out.println( String.format("Creating new player: " , playerName));
-            Player newPlayer = new Player(playerName, startingLocation);
-            health.initializeHealth(playerName);
-            // add the new player to the map
-            players.put(playerName, newPlayer);
+        Player player = players.get(playerName);
+        if (player == null) {
+            player = this.activate(playerName);
+        }
+        player.touch(System.currentTimeMillis());
+        return player;
+    }
+
+    //bring a passivated player back, or create a new one
+    private synchronized Player activate(String playerName) {
+        Player player = players.get(playerName);
+        if (player != null) {
+            return player;
+        }
+        PlayerArchive.Record record = this.takeRecord(playerName);
+        if (record == null) {
+            Log.info("Creating new player: %s", playerName);
+            player = new Player(this.allocateId(), playerName, startingLocation);
+            health.initializeHealth(player);
+        } else {
+            player = this.restore(record);
+            Log.info("Reactivated player: %s", playerName);
+        }
+        players.put(playerName, player);
+        return player;
+    }
+
+    private PlayerArchive.Record takeRecord(String playerName) {
+        if (archive == null) {
+            return null;
+        }
+        try {
+            return archive.take(playerName);
+        } catch (IOException e) {
+            //starting over is better than refusing the player
+            Log.error("[Error] Unable to reactivate player, starting fresh: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    private Player restore(PlayerArchive.Record record) {
+        WorldStore world = startingLocation.getStore();
+        GameEntity.Location location = locations.get(world.name(record.getLocationRow()));
+        Player player = new Player(this.allocateId(), record.getName(), location == null ? startingLocation : location);
+        health.initializeHealth(player);
+        health.getPlayerStats().set(player.getId(), PlayerStats.HEALTH, record.getHealth());
+        for (int row : record.getItemRows()) {
+            player.addInPack(new GameEntity.Item(world, row));
+            world.unhold(row);
+        }
+        return player;
+    }
+
+    //passivate every player idle since before now - idleTimeoutMillis, returns how many went
+    public int passivateIdle(long now) {
+        return this.passivateIdle(now, this);
+    }
+
+    /**
+    * Sweep used by GameServer's background task. The game lock is taken for one player at
+    * a time, before this handler's own lock like a command does, so other players keep
+    * playing while idle ones are written out.
+    */
+    public int passivateIdle(long now, Object gameLock) {
+        if (archive == null) {
+            return 0;
+        }
+        int passivated = 0;
+        for (Player candidate : players.values()) {
+            if (now - candidate.getLastActive() < idleTimeoutMillis) {
+                continue;
+            }
+            synchronized (gameLock) {
+                synchronized (this) {
+                    //they may have played, or gone, while the lock was taken
+                    if (players.get(candidate.getName()) == candidate && now - candidate.getLastActive() >= idleTimeoutMillis
+                            && this.passivate(candidate)) {
+                        passivated++;
+                    }
+                }
+            }
+        }
+        if (passivated > 0) {
+            Log.info("Passivated %s", this);
         }
-        return players.get(playerName);
+        return passivated;
     }
 
+    private boolean passivate(Player player) {
+        WorldStore world = startingLocation.getStore();
+        int[] itemRows = new int[player.getInventory().size()];
+        boolean[] copied = new boolean[itemRows.length];
+        int i = 0;
+        for (GameEntity item : player.getInventory()) {
+            //items from another store are copied in, since only rows of this world are recorded
+            copied[i] = item.getStore() != world;
+            itemRows[i] = copied[i] ? world.add(item.getName(), item.getDescription(), item.getKind()) : item.getRow();
+            i++;
+        }
+        try {
+            archive.write(new PlayerArchive.Record(player.getName(), player.getLocation().getRow(), health.getHealth(player), itemRows));
+        } catch (IOException e) {
+            Log.error("[Error] Unable to passivate player, keeping them active: %s", e.getMessage());
+            for (int j = 0; j < itemRows.length; j++) {
+                if (copied[j]) {
+                    world.release(itemRows[j]);
+                }
+            }
+            return false;
+        }
+        //the record holds the rows until restore, so consuming another copy (e.g. a produced item
+        //left at the location) cannot release a row the player will come back with
+        for (int row : itemRows) {
+            world.hold(row);
+        }
+        player.getInventory().clear();
+        players.remove(player.getName());
+        player.getLocation().removeOccupant(player);
+        this.releaseId(player.getId());
+        passivationListener.accept(player);
+        return true;
+    }
 
+    private int allocateId() {
+        return freeIdCount > 0 ? freeIds[--freeIdCount] : nextPlayerId++;
+    }
+
+    private void releaseId(int playerId) {
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = playerId;
+    }
+
+    //active players only
     public Map<String, Player> getPlayers() {
-        return players;
+        return Collections.unmodifiableMap(players);
     }
-}
 
+    public int getActiveCount() {
+        return players.size();
+    }
+
+    public int getPassivatedCount() {
+        return archive == null ? 0 : archive.size();
+    }
 
+    @Override
+    public String toString() {
+        return String.format("Players: %d active, %d passivated", this.getActiveCount(), this.getPassivatedCount());
+    }
+}
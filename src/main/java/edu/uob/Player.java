@@ -1,46 +1,59 @@
 package edu.uob;
 
-import java.util.LinkedList;
 import java.util.List;
 
 public class Player {
+    //dense ID from MultiPlayerHandler, indexes PlayerStats
+    private final int id;
     private final String name;
     private GameEntity.Location currentLocation;
-    private final List<GameEntity> inventory;
-    private int health;
+    private final EntityIndex<GameEntity> inventory;
+    private final EntityPresence packPresence = new EntityPresence();
+    //System.currentTimeMillis() of the player's last command, for idle passivation
+    private volatile long lastActive = System.currentTimeMillis();
 
 
-    public Player(String name, GameEntity.Location startLocation) {
+    public Player(int id, String name, GameEntity.Location startLocation) {
+        if (id < 0) {
+            throw new IllegalArgumentException(String.format("[Error] Player ID cannot be negative: %d", id));
+        }
+        this.id = id;
         this.name = name;
         this.currentLocation = startLocation;
-        this.inventory = new LinkedList<>();
-        this.health = 3;
+        startLocation.addOccupant(this);
+        this.inventory = new EntityIndex<>(packPresence, WorldStore.CARRIED);
     }
 
     //player status
+    public int getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
 
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    public void touch(long now) {
+        this.lastActive = now;
+    }
+
     public GameEntity.Location getLocation() {
         return currentLocation;
     }
 
     public void setLocation(GameEntity.Location newLocation) {
+        this.currentLocation.removeOccupant(this);
+        newLocation.addOccupant(this);
         this.currentLocation = newLocation;
     }
 
     //player health
-    public int getHealth() {
-        return health;
-    }
-
-    public void setHealth(int health) {
-        this.health = health;
-    }
-
     public String checkHealth(Health health) {
-        return String.format("Your health is: %d", health.getHealth(this.name));
+        return String.format("Your health is: %d", health.getHealth(this));
     }
 
     //player backpack
@@ -49,28 +62,29 @@ public class Player {
     }
 
     public boolean checkPack(String itemName) {
-        for (GameEntity item : this.inventory) {
-            if (item.getName().equals(itemName)) {
-                return true;
-            }
-        }
-        return false;
+        return this.inventory.containsName(itemName);
     }
 
+    //every copy with this name
     public void removeItem(String itemName) {
-        List<GameEntity> itemsToRemove = new LinkedList<>();
-        for (GameEntity item : this.inventory) {
-            if (item.getName().equals(itemName)) {
-                itemsToRemove.add(item);
-            }
+        while (this.inventory.removeFirst(itemName)) {
+            //keep going
         }
-        this.inventory.removeAll(itemsToRemove);
+    }
+
+    //remove and return the first copy with exactly this name, or null
+    public GameEntity takeItem(String itemName) {
+        return this.inventory.takeFirst(itemName);
     }
 
     public List<GameEntity> getInventory() {
         return this.inventory;
     }
 
+    public EntityPresence getPackPresence() {
+        return this.packPresence;
+    }
+
     public String showInventory() {
         if (this.inventory.isEmpty()) {
             return "Your inventory is empty";
@@ -85,66 +99,37 @@ public class Player {
 
     //get and drop items
     public String GetItem(String itemName) {
-        for (GameEntity item : this.currentLocation.getItems()) {
-            if (item.getName().equals(itemName)) {
-                this.addInPack(item);
-                this.currentLocation.removeItem(itemName);
-                return String.format("You picked up %s", itemName);
-            }
+        GameEntity item = this.currentLocation.getItems().find(itemName);
+        if (item != null) {
+            this.addInPack(item);
+            this.currentLocation.removeItem(itemName);
+            return String.format("You picked up %s", itemName);
         }
         return "Item not found";
     }
 
     public String dropItem(String itemName) {
-        if (this.checkPack(itemName)) {
-            GameEntity itemToDrop = null;
-            for (GameEntity item : this.inventory) {
-                if (item.getName().equals(itemName)) {
-                    itemToDrop = item;
-                    break;
-                }
-            }
-            if (itemToDrop != null) {
-                this.removeItem(itemName);
-                this.currentLocation.addItem(itemToDrop);
-                return String.format("You dropped %s", itemName);
-            }
+        GameEntity itemToDrop = this.inventory.find(itemName);
+        if (itemToDrop != null) {
+            this.removeItem(itemName);
+            this.currentLocation.addItem(itemToDrop);
+            return String.format("You dropped %s", itemName);
         }
         return "You don't have that item";
     }
 
-    //look other
-    public String lookAround(MultiPlayerHandler multiPlayerHandler) {
-        StringBuilder description = new StringBuilder(
-            String.format("\nYou are at: %s\n", this.currentLocation.getDescription()));
-
-        description.append("You see the following artefacts:\n");
-        for (GameEntity item : this.currentLocation.getItems()) {
-            description.append(String.format("- %s: %s\n", item.getName(), item.getDescription()));
+    //look other: the location's cached view plus whoever else is standing there
+    public String lookAround() {
+        String view = this.currentLocation.getView();
+        if (this.currentLocation.getOccupants().size() == 1) {
+            return view;
         }
-
-        description.append("You see the following furniture:\n");
-        for (GameEntity furniture : this.currentLocation.getFurniture()) {
-            description.append(String.format("- %s: %s\n", furniture.getName(), furniture.getDescription()));
-        }
-
-        description.append("You see the following characters:\n");
-        for (GameEntity character : this.currentLocation.getCharacters()) {
-            description.append(String.format("- %s: %s\n", character.getName(), character.getDescription()));
-        }
-
-        description.append("You can go to the following locations:\n");
-        for (GameEntity.Location location : this.currentLocation.getConnectedLocations()) {
-            description.append(String.format("- %s\n", location.getName()));
-        }
-
-        description.append("You see the other players:\n");
-        for (Player otherPlayer : multiPlayerHandler.getPlayers().values()) {
-            if (!otherPlayer.equals(this) && otherPlayer.getLocation().equals(this.currentLocation)) {
-                description.append(String.format("- %s\n", otherPlayer.getName()));
+        StringBuilder description = new StringBuilder(view);
+        for (Player otherPlayer : this.currentLocation.getOccupants()) {
+            if (otherPlayer != this) {
+                description.append("- ").append(otherPlayer.getName()).append("\n");
             }
         }
-
         return description.toString();
     }
 
@@ -0,0 +1,143 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* One small file per passivated player, in a directory of its own.
+*
+* <p>A record is the player's location and inventory as {@link WorldStore} rows plus their
+* health, so it only makes sense to the world that wrote it; the directory is emptied of
+* old records when an archive is opened. File names are the hex of the player name, which
+* keeps names that differ only in case apart on any file system.
+*/
+public final class PlayerArchive {
+
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".player";
+
+    //what a passivated player needs to come back exactly as they were
+    public static final class Record {
+        private final String name;
+        private final int locationRow;
+        private final int health;
+        private final int[] itemRows;
+
+        public Record(String name, int locationRow, int health, int[] itemRows) {
+            this.name = name;
+            this.locationRow = locationRow;
+            this.health = health;
+            this.itemRows = itemRows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLocationRow() {
+            return locationRow;
+        }
+
+        public int getHealth() {
+            return health;
+        }
+
+        public int[] getItemRows() {
+            return itemRows;
+        }
+    }
+
+    private final Path directory;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public PlayerArchive(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : stale) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("[Error] Unable to open player archive %s: %s", directory, e.getMessage()), e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    private Path fileOf(String playerName) {
+        StringBuilder fileName = new StringBuilder();
+        for (byte b : playerName.getBytes(StandardCharsets.UTF_8)) {
+            fileName.append(String.format("%02x", b));
+        }
+        return directory.resolve(fileName.append(SUFFIX).toString());
+    }
+
+    public boolean contains(String playerName) {
+        return Files.exists(this.fileOf(playerName));
+    }
+
+    //written to a temporary file first, so a crash never leaves half a record
+    public void write(Record record) throws IOException {
+        Path file = this.fileOf(record.getName());
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(record.getName());
+            out.writeInt(record.getLocationRow());
+            out.writeInt(record.getHealth());
+            out.writeInt(record.getItemRows().length);
+            for (int row : record.getItemRows()) {
+                out.writeInt(row);
+            }
+        }
+        //a record left behind by a failed take is replaced, and was already counted
+        boolean replacing = Files.exists(file);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!replacing) {
+            count.incrementAndGet();
+        }
+    }
+
+    //read and delete a player's record, null if they were never passivated
+    public Record take(String playerName) throws IOException {
+        Path file = this.fileOf(playerName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Record record;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("[Error] Unsupported player record version %d in %s", version, file));
+            }
+            String name = in.readUTF();
+            int locationRow = in.readInt();
+            int health = in.readInt();
+            int[] itemRows = new int[in.readInt()];
+            for (int i = 0; i < itemRows.length; i++) {
+                itemRows[i] = in.readInt();
+            }
+            record = new Record(name, locationRow, health, itemRows);
+        }
+        Files.delete(file);
+        count.decrementAndGet();
+        return record;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.uob;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+* Per-player int counters (health, and whatever comes next) indexed by the dense player
+* ID that {@link MultiPlayerHandler} hands out.
+*
+* <p>Values sit in fixed-size int pages that are never copied once created, so a
+* compare-and-set on a player's slot can never be lost to a resize; growing only adds
+* pages to a volatile page table. Reads and updates need no boxing, hashing or locks.
+*/
+public final class PlayerStats {
+
+    //stat columns of one player
+    public static final int HEALTH = 0;
+    public static final int STATS = 1;
+
+    private static final int PAGE_PLAYERS = 256;
+    private static final int PAGE_INTS = PAGE_PLAYERS * STATS;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile int[][] pages = new int[0][];
+
+    //make sure this player ID has slots, all stats starting at 0
+    public synchronized void ensurePlayer(int playerId) {
+        int page = playerId / PAGE_PLAYERS;
+        if (page >= pages.length) {
+            int[][] grown = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            for (int i = pages.length; i < grown.length; i++) {
+                grown[i] = new int[PAGE_INTS];
+            }
+            pages = grown;
+        }
+    }
+
+    private int[] page(int playerId) {
+        int[][] table = pages;
+        int page = playerId / PAGE_PLAYERS;
+        if (playerId < 0 || page >= table.length) {
+            throw new IllegalArgumentException(String.format("[Error] Unknown player ID: %d", playerId));
+        }
+        return table[page];
+    }
+
+    private static int slot(int playerId, int stat) {
+        return (playerId % PAGE_PLAYERS) * STATS + stat;
+    }
+
+    public int get(int playerId, int stat) {
+        return (int) SLOT.getVolatile(this.page(playerId), PlayerStats.slot(playerId, stat));
+    }
+
+    public void set(int playerId, int stat, int value) {
+        SLOT.setVolatile(this.page(playerId), PlayerStats.slot(playerId, stat), value);
+    }
+
+    //add delta atomically, keeping the result within [min, max]; returns the new value
+    public int addClamped(int playerId, int stat, int delta, int min, int max) {
+        int[] page = this.page(playerId);
+        int slot = PlayerStats.slot(playerId, stat);
+        while (true) {
+            int current = (int) SLOT.getVolatile(page, slot);
+            int updated = Math.min(max, Math.max(min, current + delta));
+            if (SLOT.compareAndSet(page, slot, current, updated)) {
+                return updated;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.uob;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+* Replies that never change after load (action narrations), encoded once into
+* read-only direct buffers.
+*
+* <p>A reply equal to a registered fragment is written straight from its buffer
+* instead of being encoded again. Each fragment is stored with its binary protocol
+* length prefix in front, so framed replies need no separate header buffer either.
+*/
+public class ResponseFragments {
+    //length prefix followed by the UTF-8 text
+    private final Map<String, ByteBuffer> fragments = new HashMap<>();
+
+    public void register(String text) {
+        if (text == null || text.isEmpty() || fragments.containsKey(text)) {
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+        fragments.put(text, buffer.asReadOnlyBuffer());
+    }
+
+    //a fresh view of the encoded fragment, or null if the text is not static
+    public ByteBuffer lookup(String text) {
+        ByteBuffer fragment = fragments.get(text);
+        return fragment == null ? null : fragment.duplicate().position(Integer.BYTES);
+    }
+
+    //a fresh view of the fragment as one binary protocol frame, or null if the text is not static
+    public ByteBuffer lookupFramed(String text) {
+        ByteBuffer fragment = fragments.get(text);
+        return fragment == null ? null : fragment.duplicate();
+    }
+
+    public int size() {
+        return fragments.size();
+    }
+}
@@ -0,0 +1,496 @@
+package edu.uob;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+* Non-blocking listener: one thread accepts, a few IO threads multiplex every
+* connected SocketChannel on their own Selector.
+*
+* <p>The wire format is the same as the blocking listener: one command per line in,
+* the response followed by an END_OF_TRANSMISSION line out. With a session idle timeout
+* a connection carries many commands and is closed once it has been silent too long;
+* without one it answers a single command and is closed, so pipelining needs a session.
+* Commands pipelined by the client are answered in the order they were sent. A client
+* whose first byte is {@link BinaryProtocol#MAGIC} uses length-prefixed frames instead.
+*/
+public class SelectorServer implements Closeable, GameListener {
+
+    //newline, END_OF_TRANSMISSION, newline: shared by every text reply
+    private static final ByteBuffer TEXT_TERMINATOR = ByteBuffer.wrap(new byte[] {'\n', 4, '\n'}).asReadOnlyBuffer();
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final long IDLE_SWEEP_MILLIS = 1000;
+    private static final int REPLY_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    private final GameServer server;
+    private final ServerOptions options;
+    private final ResponseFragments fragments;
+    private final DirectBufferPool replyBuffers;
+    private final AdmissionControl admissionControl;
+    private final InFlightTracker tracker;
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private IoLoop[] ioLoops;
+    private Thread[] ioThreads;
+    private int nextLoop;
+    private volatile boolean accepting = true;
+
+    public SelectorServer(GameServer server, ServerOptions options) {
+        this.server = server;
+        this.options = options;
+        this.fragments = server.getResponseFragments();
+        this.replyBuffers = new DirectBufferPool(REPLY_BUFFER_SIZE, 64 * options.getIoThreads());
+        this.admissionControl = new AdmissionControl(options);
+        this.tracker = server.getInFlightTracker();
+    }
+
+    //bind the port and start the IO threads, returns the bound port (useful with port 0)
+    public int open(int portNumber) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNumber), options.getAcceptBacklog());
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        ioLoops = new IoLoop[options.getIoThreads()];
+        ioThreads = new Thread[ioLoops.length];
+        for (int i = 0; i < ioLoops.length; i++) {
+            ioLoops[i] = new IoLoop();
+            ioThreads[i] = new Thread(ioLoops[i], String.format("stag-io-%d", i));
+            ioThreads[i].setDaemon(true);
+            ioThreads[i].start();
+        }
+        server.registerListener(this);
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    //accept connections until the calling thread is interrupted or stopAccepting is called
+    public void run() throws IOException {
+        try {
+            while (accepting && !Thread.interrupted()) {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        this.acceptAll();
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            System.out.println("Selector server stopped accepting");
+        } finally {
+            //after stopAccepting the IO threads keep draining, shutdown closes them
+            if (accepting) {
+                this.close();
+            } else {
+                acceptSelector.close();
+            }
+        }
+    }
+
+    @Override
+    public void stopAccepting() throws IOException {
+        accepting = false;
+        serverChannel.close();
+        acceptSelector.wakeup();
+    }
+
+    //stop the IO threads, which flush what they can of the queued replies before closing
+    @Override
+    public void closeConnections() throws IOException {
+        this.close();
+        for (Thread ioThread : ioThreads) {
+            try {
+                ioThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void acceptAll() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            //spread connections over the IO threads
+            ioLoops[nextLoop].register(channel);
+            nextLoop = (nextLoop + 1) % ioLoops.length;
+        }
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.unregisterListener(this);
+        if (ioLoops != null) {
+            for (IoLoop ioLoop : ioLoops) {
+                ioLoop.stop();
+            }
+        }
+        if (acceptSelector != null) {
+            acceptSelector.close();
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    //one selector thread serving many connections
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        //scratch for encoding replies and for gathering writes, only used by this loop's thread
+        private final CharsetEncoder encoder = BinaryProtocol.newEncoder();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        private volatile boolean running = true;
+
+        IoLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long nextSweep = System.currentTimeMillis() + IDLE_SWEEP_MILLIS;
+                while (running) {
+                    selector.select(IDLE_SWEEP_MILLIS);
+                    this.registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                    if (options.getSessionIdleTimeoutMillis() > 0 && System.currentTimeMillis() >= nextSweep) {
+                        this.closeIdle();
+                        nextSweep = System.currentTimeMillis() + IDLE_SWEEP_MILLIS;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(String.format("[Error] IO loop stopped: %s", e.getMessage()));
+            } finally {
+                this.closeAll();
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    System.err.println(String.format("[Error] Unable to register connection: %s", e.getMessage()));
+                }
+            }
+        }
+
+        //close sessions that have been silent for longer than the idle timeout
+        private void closeIdle() {
+            long idleSince = System.currentTimeMillis() - options.getSessionIdleTimeoutMillis();
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection != null && connection.isIdleSince(idleSince)) {
+                    Log.info("Session idle, closing connection");
+                    connection.close();
+                }
+            }
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).closeGracefully();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println(String.format("[Error] Unable to close selector: %s", e.getMessage()));
+            }
+        }
+    }
+
+    //per-connection state: the partial incoming line and the queued responses
+    private final class Connection {
+        private final SocketChannel channel;
+        private final IoLoop ioLoop;
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        private final Deque<ByteBuffer> outgoing = new ArrayDeque<>();
+        private final List<String> batch = new ArrayList<>();
+        //null until the first byte tells which protocol the client speaks
+        private Boolean binary;
+        private ByteBuffer frameBuffer;
+        private SelectionKey key;
+        private boolean closeAfterWrite;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, IoLoop ioLoop) {
+            this.channel = channel;
+            this.ioLoop = ioLoop;
+        }
+
+        void read(ByteBuffer readBuffer) throws IOException {
+            readBuffer.clear();
+            int count = channel.read(readBuffer);
+            lastActivity = System.currentTimeMillis();
+            if (count < 0) {
+                closeAfterWrite = true;
+                this.flush();
+                return;
+            }
+            readBuffer.flip();
+            if (binary == null && readBuffer.hasRemaining()) {
+                binary = (readBuffer.get(readBuffer.position()) & 0xFF) == BinaryProtocol.MAGIC;
+                if (binary) {
+                    readBuffer.get();
+                    frameBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                }
+            }
+            if (Boolean.TRUE.equals(binary)) {
+                this.readFrames(readBuffer);
+            } else {
+                this.readLines(readBuffer);
+            }
+            this.respondToBatch();
+            this.flush();
+        }
+
+        private void readLines(ByteBuffer readBuffer) throws IOException {
+            boolean session = options.getSessionIdleTimeoutMillis() > 0;
+            while (readBuffer.hasRemaining() && !closeAfterWrite) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    batch.add(this.takeLine());
+                    //without sessions there is one command per connection, same as the blocking listener
+                    closeAfterWrite = !session;
+                } else if (lineBuffer.size() >= MAX_LINE_LENGTH) {
+                    lineBuffer.reset();
+                    this.respondToBatch();
+                    this.queueReply("[Error] Command too long");
+                    closeAfterWrite = true;
+                } else {
+                    lineBuffer.write(b);
+                }
+            }
+        }
+
+        //append to the frame buffer and take every complete request out of it
+        private void readFrames(ByteBuffer readBuffer) throws IOException {
+            if (frameBuffer.remaining() < readBuffer.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(frameBuffer.capacity() * 2, frameBuffer.position() + readBuffer.remaining()));
+                frameBuffer.flip();
+                larger.put(frameBuffer);
+                frameBuffer = larger;
+            }
+            frameBuffer.put(readBuffer);
+            frameBuffer.flip();
+            boolean session = options.getSessionIdleTimeoutMillis() > 0;
+            String request;
+            while (!closeAfterWrite && (request = BinaryProtocol.decodeRequest(frameBuffer)) != null) {
+                batch.add(request);
+                closeAfterWrite = !session;
+            }
+            frameBuffer.compact();
+        }
+
+        private String takeLine() {
+            String line = lineBuffer.toString(StandardCharsets.UTF_8);
+            lineBuffer.reset();
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            return line;
+        }
+
+        //pipelined commands that arrived together are handled in one pass, replies keep their order
+        private void respondToBatch() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            int commands = batch.size();
+            if (!tracker.tryBegin(commands)) {
+                for (int i = 0; i < commands; i++) {
+                    this.queueReply(InFlightTracker.SHUTTING_DOWN_RESPONSE);
+                }
+            } else {
+                try {
+                    //never wait for a slot here, every connection on this selector would wait too
+                    for (String result : admissionControl.tryRun(batch, server::handleCommands)) {
+                        this.queueReply(result);
+                    }
+                } finally {
+                    tracker.end(commands);
+                }
+            }
+            batch.clear();
+            if (tracker.isShuttingDown()) {
+                closeAfterWrite = true;
+            }
+        }
+
+        //static replies go out straight from their pre-encoded buffer, the rest is encoded into pooled buffers
+        private void queueReply(String result) throws IOException {
+            boolean framed = Boolean.TRUE.equals(binary);
+            ByteBuffer fragment = framed ? fragments.lookupFramed(result) : fragments.lookup(result);
+            if (fragment != null) {
+                outgoing.add(fragment);
+            } else {
+                this.encodeReply(result, framed);
+            }
+            if (!framed) {
+                outgoing.add(TEXT_TERMINATOR.duplicate());
+            }
+        }
+
+        //a framed reply keeps its length prefix at the start of the first buffer, filled in once the length is known
+        private void encodeReply(String result, boolean framed) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(result);
+            CharsetEncoder encoder = ioLoop.encoder;
+            encoder.reset();
+            ByteBuffer first = null;
+            int length = 0;
+            boolean done = false;
+            while (!done) {
+                ByteBuffer buffer = replyBuffers.acquire();
+                if (first == null) {
+                    first = buffer;
+                    if (framed) {
+                        buffer.position(Integer.BYTES);
+                    }
+                }
+                CoderResult coderResult = encoder.encode(chars, buffer, true);
+                if (!coderResult.isOverflow()) {
+                    coderResult = encoder.flush(buffer);
+                    done = !coderResult.isOverflow();
+                }
+                if (coderResult.isError()) {
+                    coderResult.throwException();
+                }
+                buffer.flip();
+                length += buffer.remaining();
+                outgoing.add(buffer);
+            }
+            if (framed) {
+                first.putInt(0, length - Integer.BYTES);
+            }
+        }
+
+        boolean isIdleSince(long idleSince) {
+            return outgoing.isEmpty() && lastActivity < idleSince;
+        }
+
+        //gathering write of as many queued buffers as possible, written pooled buffers go back to the pool
+        void flush() throws IOException {
+            ByteBuffer[] gather = ioLoop.gather;
+            while (!outgoing.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : outgoing) {
+                    if (count == gather.length) {
+                        break;
+                    }
+                    gather[count++] = buffer;
+                }
+                channel.write(gather, 0, count);
+                Arrays.fill(gather, 0, count, null);
+                int written = 0;
+                while (!outgoing.isEmpty() && !outgoing.peek().hasRemaining()) {
+                    replyBuffers.release(outgoing.poll());
+                    written++;
+                }
+                if (written < count) {
+                    //socket buffer is full, wait until it is writable again
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (closeAfterWrite) {
+                this.close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        //one last non-blocking write of the queued replies, then close
+        void closeGracefully() {
+            if (!outgoing.isEmpty() && channel.isOpen()) {
+                try {
+                    for (ByteBuffer buffer : outgoing) {
+                        channel.write(buffer);
+                        if (buffer.hasRemaining()) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.info("Connection closed before its replies were flushed");
+                }
+            }
+            this.close();
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            while (!outgoing.isEmpty()) {
+                replyBuffers.release(outgoing.poll());
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.info("Connection closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package edu.uob;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class ServerOptions {
+
+    //listener the server should run
+    public enum Mode {
+        BLOCKING,
+        SELECTOR,
+        THREADS
+    }
+
+    //where entity rows and descriptions are kept, see WorldStore
+    public enum WorldStorage {
+        HEAP,
+        OFF_HEAP,
+        MAPPED
+    }
+
+    private Mode mode = Mode.BLOCKING;
+    private int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int gameQueueCapacity = 1024;
+    //0 keeps the original one-command-per-connection behaviour; the blocking listener ignores it
+    private int sessionIdleTimeoutMillis = 0;
+    private int acceptBacklog = 50;
+    private int maxInFlight = 256;
+    private int maxQueued = 1024;
+    //0 leaves the HTTP gateway off
+    private int httpPort = 0;
+    //DEBUG brings back the per-command trace
+    private Log.Level logLevel = Log.Level.INFO;
+    private WorldStorage worldStorage = WorldStorage.HEAP;
+    //backing file for MAPPED storage
+    private Path worldFile;
+    //0 keeps every player in memory for the life of the server
+    private long playerIdleTimeoutMillis = 0;
+    //where passivated players are written, a temporary directory if not set
+    private Path playerArchive;
+
+    //read "--key=value" options, anything else (e.g. config paths) is ignored
+    public static ServerOptions fromArgs(String[] args) {
+        ServerOptions options = new ServerOptions();
+        boolean maxInFlightSet = false;
+        boolean maxQueuedSet = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            String[] parts = arg.substring(2).split("=", 2);
+            String value = parts.length == 2 ? parts[1].trim() : "";
+            switch (parts[0]) {
+                case "mode":
+                    options.setMode(Mode.valueOf(value.toUpperCase()));
+                    break;
+                case "io-threads":
+                    options.setIoThreads(Integer.parseInt(value));
+                    break;
+                case "game-queue":
+                    options.setGameQueueCapacity(Integer.parseInt(value));
+                    break;
+                case "session-timeout":
+                    options.setSessionIdleTimeoutMillis(Integer.parseInt(value));
+                    break;
+                case "backlog":
+                    options.setAcceptBacklog(Integer.parseInt(value));
+                    break;
+                case "max-in-flight":
+                    options.setMaxInFlight(Integer.parseInt(value));
+                    maxInFlightSet = true;
+                    break;
+                case "max-queued":
+                    options.setMaxQueued(Integer.parseInt(value));
+                    maxQueuedSet = true;
+                    break;
+                case "http-port":
+                    options.setHttpPort(Integer.parseInt(value));
+                    break;
+                case "log-level":
+                    options.setLogLevel(Log.Level.valueOf(value.toUpperCase()));
+                    break;
+                case "world-storage":
+                    options.setWorldStorage(WorldStorage.valueOf(value.toUpperCase().replace('-', '_')));
+                    break;
+                case "world-file":
+                    options.setWorldFile(Paths.get(value));
+                    break;
+                case "player-idle-timeout":
+                    options.setPlayerIdleTimeoutMillis(Long.parseLong(value));
+                    break;
+                case "player-archive":
+                    options.setPlayerArchive(Paths.get(value));
+                    break;
+                default:
+                    System.err.println(String.format("[Error] Unknown server option: %s", arg));
+            }
+        }
+        //only the threaded listener and the HTTP gateway let requests wait for a slot
+        if (maxQueuedSet && options.getMode() == Mode.SELECTOR) {
+            System.err.println("[Warning] --max-queued only applies to the HTTP gateway in selector mode, selector connections are rejected as soon as --max-in-flight is reached");
+        }
+        if ((maxInFlightSet || maxQueuedSet) && options.getMode() == Mode.BLOCKING) {
+            System.err.println("[Warning] --max-in-flight and --max-queued only apply to the HTTP gateway in blocking mode, the blocking listener serves one connection at a time");
+        }
+        return options;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public ServerOptions setMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public ServerOptions setIoThreads(int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException(String.format("[Error] io-threads must be at least 1: %d", ioThreads));
+        }
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    public int getGameQueueCapacity() {
+        return gameQueueCapacity;
+    }
+
+    public ServerOptions setGameQueueCapacity(int gameQueueCapacity) {
+        if (gameQueueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("[Error] game-queue must be at least 1: %d", gameQueueCapacity));
+        }
+        this.gameQueueCapacity = gameQueueCapacity;
+        return this;
+    }
+
+    public int getSessionIdleTimeoutMillis() {
+        return sessionIdleTimeoutMillis;
+    }
+
+    public ServerOptions setSessionIdleTimeoutMillis(int sessionIdleTimeoutMillis) {
+        if (sessionIdleTimeoutMillis < 0) {
+            throw new IllegalArgumentException(String.format("[Error] session-timeout cannot be negative: %d", sessionIdleTimeoutMillis));
+        }
+        this.sessionIdleTimeoutMillis = sessionIdleTimeoutMillis;
+        return this;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public ServerOptions setAcceptBacklog(int acceptBacklog) {
+        if (acceptBacklog < 1) {
+            throw new IllegalArgumentException(String.format("[Error] backlog must be at least 1: %d", acceptBacklog));
+        }
+        this.acceptBacklog = acceptBacklog;
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public ServerOptions setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("[Error] max-in-flight must be at least 1: %d", maxInFlight));
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public ServerOptions setMaxQueued(int maxQueued) {
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException(String.format("[Error] max-queued cannot be negative: %d", maxQueued));
+        }
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public ServerOptions setHttpPort(int httpPort) {
+        if (httpPort < 0 || httpPort > 65535) {
+            throw new IllegalArgumentException(String.format("[Error] http-port out of range: %d", httpPort));
+        }
+        this.httpPort = httpPort;
+        return this;
+    }
+
+    public Log.Level getLogLevel() {
+        return logLevel;
+    }
+
+    public ServerOptions setLogLevel(Log.Level logLevel) {
+        this.logLevel = logLevel;
+        return this;
+    }
+
+    public WorldStorage getWorldStorage() {
+        return worldStorage;
+    }
+
+    public ServerOptions setWorldStorage(WorldStorage worldStorage) {
+        this.worldStorage = worldStorage;
+        return this;
+    }
+
+    public Path getWorldFile() {
+        return worldFile;
+    }
+
+    public ServerOptions setWorldFile(Path worldFile) {
+        this.worldFile = worldFile;
+        return this;
+    }
+
+    public long getPlayerIdleTimeoutMillis() {
+        return playerIdleTimeoutMillis;
+    }
+
+    public ServerOptions setPlayerIdleTimeoutMillis(long playerIdleTimeoutMillis) {
+        if (playerIdleTimeoutMillis < 0) {
+            throw new IllegalArgumentException(String.format("[Error] player-idle-timeout cannot be negative: %d", playerIdleTimeoutMillis));
+        }
+        this.playerIdleTimeoutMillis = playerIdleTimeoutMillis;
+        return this;
+    }
+
+    public Path getPlayerArchive() {
+        return playerArchive;
+    }
+
+    public ServerOptions setPlayerArchive(Path playerArchive) {
+        this.playerArchive = playerArchive;
+        return this;
+    }
+
+    //an empty store of the configured kind
+    public WorldStore createWorldStore() {
+        switch (worldStorage) {
+            case OFF_HEAP:
+                return WorldStore.offHeap();
+            case MAPPED:
+                if (worldFile == null) {
+                    throw new IllegalArgumentException("[Error] world-file is required for mapped world storage");
+                }
+                return WorldStore.mapped(worldFile);
+            default:
+                return new WorldStore();
+        }
+    }
+}
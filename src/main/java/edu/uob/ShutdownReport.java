@@ -0,0 +1,27 @@
+package edu.uob;
+
+//outcome of GameServer.shutdown
+public class ShutdownReport {
+    private final long drained;
+    private final long aborted;
+
+    public ShutdownReport(long drained, long aborted) {
+        this.drained = drained;
+        this.aborted = aborted;
+    }
+
+    //commands that were in flight when shutdown started and finished before the deadline
+    public long getDrained() {
+        return drained;
+    }
+
+    //commands still running at the deadline or refused because shutdown had started
+    public long getAborted() {
+        return aborted;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Shutdown drained %d command(s), aborted %d", drained, aborted);
+    }
+}
@@ -0,0 +1,237 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+* Serves one accepted socket for the stream based listeners (blocking and threaded).
+*
+* <p>With a session idle timeout of 0 the connection answers a single command and is
+* closed, which is what the blocking listener always asks for since it serves one socket
+* at a time; otherwise it keeps answering commands until the client closes it or stays
+* silent for longer than the timeout. Commands pipelined by the client are handled as
+* one batch and answered in order with a single flush.
+*
+* <p>If the first byte is {@link BinaryProtocol#MAGIC} the connection speaks the
+* length-prefixed protocol, otherwise the newline / END_OF_TRANSMISSION text protocol.
+* A batch counts as in flight until its replies are flushed, and a session ends after
+* its current batch once the server is shutting down.
+*/
+public final class StreamConnection {
+
+    private static final char END_OF_TRANSMISSION = 4;
+
+    private StreamConnection() {
+    }
+
+    public static void serve(Socket socket, Function<List<String>, List<String>> handler, int sessionIdleTimeoutMillis,
+                             InFlightTracker tracker) throws IOException {
+        boolean session = sessionIdleTimeoutMillis > 0;
+        if (session) {
+            socket.setSoTimeout(sessionIdleTimeoutMillis);
+        }
+        BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+
+        //peek at the first byte to pick the protocol
+        int firstByte;
+        try {
+            in.mark(1);
+            firstByte = in.read();
+        } catch (SocketTimeoutException e) {
+            Log.info("Session idle, closing connection");
+            return;
+        }
+        if (firstByte < 0) {
+            return;
+        }
+        if (firstByte == BinaryProtocol.MAGIC) {
+            StreamConnection.serveBinary(socket, in, handler, session, tracker);
+        } else {
+            in.reset();
+            StreamConnection.serveText(socket, in, handler, session, tracker);
+        }
+    }
+
+    private static void serveText(Socket socket, BufferedInputStream in, Function<List<String>, List<String>> handler,
+                                  boolean session, InFlightTracker tracker) throws IOException {
+        LineReader reader = new LineReader(in);
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        List<String> batch = new ArrayList<>();
+
+        do {
+            String incomingCommand;
+            try {
+                incomingCommand = reader.readLine();
+                if (incomingCommand == null) {
+                    return;
+                }
+                batch.add(incomingCommand);
+                //in a session, take every complete command the client has already pipelined
+                while (session && reader.hasBufferedLine()) {
+                    batch.add(reader.readLine());
+                }
+            } catch (SocketTimeoutException e) {
+                Log.info("Session idle, closing connection");
+                if (batch.isEmpty()) {
+                    return;
+                }
+                //still answer the commands that did arrive before closing
+                session = false;
+            }
+
+            int commands = batch.size();
+            boolean admitted = tracker.tryBegin(commands);
+            try {
+                for (String result : StreamConnection.results(batch, handler, admitted)) {
+                    writer.write(result);
+                    writer.write('\n');
+                    writer.write(END_OF_TRANSMISSION);
+                    writer.write('\n');
+                }
+                writer.flush();
+            } finally {
+                if (admitted) {
+                    tracker.end(commands);
+                }
+            }
+            batch.clear();
+        } while (session && !tracker.isShuttingDown());
+    }
+
+    private static void serveBinary(Socket socket, BufferedInputStream in, Function<List<String>, List<String>> handler,
+                                    boolean session, InFlightTracker tracker) throws IOException {
+        BinaryProtocol.FrameReader reader = new BinaryProtocol.FrameReader(in);
+        BinaryProtocol.FrameWriter writer = new BinaryProtocol.FrameWriter(new BufferedOutputStream(socket.getOutputStream()));
+        List<String> batch = new ArrayList<>();
+
+        do {
+            try {
+                String incomingCommand = reader.readRequest();
+                if (incomingCommand == null) {
+                    return;
+                }
+                batch.add(incomingCommand);
+                while (session && reader.hasBufferedInput()) {
+                    batch.add(reader.readRequest());
+                }
+            } catch (SocketTimeoutException e) {
+                Log.info("Session idle, closing connection");
+                if (batch.isEmpty()) {
+                    return;
+                }
+                session = false;
+            }
+
+            int commands = batch.size();
+            boolean admitted = tracker.tryBegin(commands);
+            try {
+                for (String result : StreamConnection.results(batch, handler, admitted)) {
+                    writer.writeFrame(result);
+                }
+                writer.flush();
+            } finally {
+                if (admitted) {
+                    tracker.end(commands);
+                }
+            }
+            batch.clear();
+        } while (session && !tracker.isShuttingDown());
+    }
+
+    //once shutdown has started the batch is answered without running it
+    private static List<String> results(List<String> batch, Function<List<String>, List<String>> handler, boolean admitted) {
+        if (admitted) {
+            return handler.apply(batch);
+        }
+        return new ArrayList<>(Collections.nCopies(batch.size(), InFlightTracker.SHUTTING_DOWN_RESPONSE));
+    }
+
+    //reads UTF-8 lines and can tell, without blocking, whether a whole line has already arrived
+    private static final class LineReader {
+        private final InputStream in;
+        private byte[] buffer = new byte[8192];
+        private int start = 0;
+        private int end = 0;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        //blocks until a line ends, null at end-of-stream; a trailing unterminated line is still returned
+        String readLine() throws IOException {
+            while (true) {
+                int newline = this.indexOfNewline();
+                if (newline >= 0) {
+                    return this.take(newline, newline + 1);
+                }
+                if (!this.fill(buffer.length)) {
+                    return start == end ? null : this.take(end, end);
+                }
+            }
+        }
+
+        //true only if a complete line is buffered or can be read without waiting for more bytes
+        boolean hasBufferedLine() throws IOException {
+            if (this.indexOfNewline() >= 0) {
+                return true;
+            }
+            int available = in.available();
+            while (available > 0 && this.indexOfNewline() < 0) {
+                if (!this.fill(available)) {
+                    return false;
+                }
+                available = in.available();
+            }
+            return this.indexOfNewline() >= 0;
+        }
+
+        private int indexOfNewline() {
+            for (int i = start; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String take(int lineEnd, int next) {
+            int length = lineEnd - start;
+            if (length > 0 && buffer[lineEnd - 1] == '\r') {
+                length--;
+            }
+            String line = new String(buffer, start, length, StandardCharsets.UTF_8);
+            start = next;
+            return line;
+        }
+
+        //reads at most limit bytes after making room, false at end-of-stream
+        private boolean fill(int limit) throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, end, Math.min(limit, buffer.length - end));
+            if (read < 0) {
+                return false;
+            }
+            end += read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uob;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+* Listener that gives every accepted connection its own (virtual when available) thread.
+*
+* <p>Connection threads block on socket reads and writes, and hand each command to a
+* {@link GameLogicExecutor} so the world is still only changed by one thread.
+*/
+public class ThreadedServer implements Closeable, GameListener {
+
+    private final GameServer server;
+    private final GameLogicExecutor gameLogic;
+    private final AdmissionControl admissionControl;
+    private final int acceptBacklog;
+    private final int sessionIdleTimeoutMillis;
+    private final ExecutorService connectionThreads;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private volatile boolean accepting = true;
+
+    public ThreadedServer(GameServer server, ServerOptions options) {
+        this.server = server;
+        this.gameLogic = new GameLogicExecutor(server, options.getGameQueueCapacity());
+        this.connectionThreads = VirtualThreads.newThreadPerTaskExecutor("stag-connection");
+        this.sessionIdleTimeoutMillis = options.getSessionIdleTimeoutMillis();
+        this.admissionControl = new AdmissionControl(options);
+        this.acceptBacklog = options.getAcceptBacklog();
+    }
+
+    //bind the port, returns the bound port (useful with port 0)
+    public int open(int portNumber) throws IOException {
+        serverSocket = new ServerSocket(portNumber, acceptBacklog);
+        server.registerListener(this);
+        return serverSocket.getLocalPort();
+    }
+
+    //accept connections until the calling thread is interrupted or the socket is closed
+    public void run() throws IOException {
+        try {
+            while (accepting && !Thread.interrupted()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    //closed from another thread
+                    break;
+                }
+                connections.add(socket);
+                connectionThreads.execute(() -> this.serveConnection(socket));
+            }
+        } finally {
+            //after stopAccepting the open connections are left to drain, shutdown closes them
+            if (accepting) {
+                this.close();
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (socket) {
+            StreamConnection.serve(socket, batch -> admissionControl.run(batch, gameLogic::executeBatch),
+                    sessionIdleTimeoutMillis, server.getInFlightTracker());
+        } catch (IOException e) {
+            Log.info("Connection closed");
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    @Override
+    public void stopAccepting() throws IOException {
+        accepting = false;
+        serverSocket.close();
+    }
+
+    //connection threads write their reply before ending the batch, so closing here loses nothing in flight
+    @Override
+    public void closeConnections() throws IOException {
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        this.close();
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.unregisterListener(this);
+        connectionThreads.shutdown();
+        gameLogic.close();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package edu.uob;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Thread-per-task executors that use virtual threads when the running JDK has them.
+*
+* <p>The build targets Java 17, so the JDK 21 factory is looked up reflectively and
+* daemon platform threads are used as the fallback.
+*/
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return (ExecutorService) executor;
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, String.format("%s-%d", namePrefix, counter.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
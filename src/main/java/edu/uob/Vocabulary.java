@@ -0,0 +1,90 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+* Every word and phrase the game understands, interned once at load time.
+*
+* <p>Each lower-cased, single-spaced phrase gets a dense int ID (0, 1, 2, ...) and a
+* bitmask of the categories it belongs to, so checking a word is one hash probe and
+* later stages can compare and index by ID instead of by string.
+*/
+public final class Vocabulary {
+
+    //what a phrase is; one phrase can be several of these at once
+    public static final int TRIGGER = 1;
+    public static final int BUILT_IN = 1 << 1;
+    public static final int ENTITY = 1 << 2;
+    public static final int LOCATION = 1 << 3;
+    public static final int SUBJECT = 1 << 4;
+    public static final int CONSUMED = 1 << 5;
+    public static final int PRODUCED = 1 << 6;
+
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private int[] categories = new int[64];
+
+    //lower-case and single-spaced, the form CommandTokenizer produces
+    static String normalize(String phrase) {
+        return String.join(" ", phrase.trim().toLowerCase().split("\\s+"));
+    }
+
+    //add a phrase, or add these categories to it if it is already there
+    public int intern(String phrase, int category) {
+        String normalized = Vocabulary.normalize(phrase);
+        if (normalized.isEmpty()) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(normalized);
+        if (id == null) {
+            id = words.size();
+            ids.put(normalized, id);
+            words.add(normalized);
+            if (id == categories.length) {
+                categories = Arrays.copyOf(categories, id * 2);
+            }
+        }
+        categories[id] |= category;
+        return id;
+    }
+
+    //add categories to a phrase only if it was already interned
+    public int mark(String phrase, int category) {
+        int id = this.id(phrase);
+        if (id != UNKNOWN) {
+            categories[id] |= category;
+        }
+        return id;
+    }
+
+    //tokens are already normalized, so only other input pays for normalize()
+    public int id(String phrase) {
+        Integer id = ids.get(phrase);
+        if (id == null) {
+            id = ids.get(Vocabulary.normalize(phrase));
+        }
+        return id == null ? UNKNOWN : id;
+    }
+
+    public String word(int id) {
+        return words.get(id);
+    }
+
+    public int categories(int id) {
+        return categories[id];
+    }
+
+    public boolean is(int id, int category) {
+        return id != UNKNOWN && (categories[id] & category) != 0;
+    }
+
+    public int size() {
+        return words.size();
+    }
+}
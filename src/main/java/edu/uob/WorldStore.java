@@ -0,0 +1,303 @@
+package edu.uob;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+* Column store behind every {@link GameEntity} of one world.
+*
+* <p>An entity is a row number. Its name, description, entity ID, kind and current
+* container each live in a column indexed by that row, and names are interned once into
+* a string table, so a GameEntity object is only a (store, row) view and a scan over one
+* attribute walks one column.
+*
+* <p>Columns and descriptions are on the heap by default, or outside it in direct or
+* file-mapped buffers ({@link #offHeap}, {@link #mapped}) for worlds big enough to make
+* full GCs hurt. Names stay on the heap either way, since every lookup and index uses them,
+* and so do the per-entity views and index nodes; see {@link OffHeapColumns} for what that
+* saves in practice and the 2 GB buffer limit.
+*
+* <p>Each row also counts the location lists and inventories holding it. A consumed entity
+* that nothing holds any more is {@link #release released}: its row goes on a free list and
+* the next {@link #add} reuses it, so repeatable actions do not grow the store.
+*
+* <p>Writes are synchronized and grown columns are filled before they are published, so
+* a row is readable from any thread that got its GameEntity safely.
+*/
+public final class WorldStore {
+
+    //kinds are bit flags so scans can ask for several at once
+    public static final int LOCATION = 1;
+    public static final int ARTEFACT = 1 << 1;
+    public static final int FURNITURE = 1 << 2;
+    public static final int CHARACTER = 1 << 3;
+    public static final int ENTITIES = ARTEFACT | FURNITURE | CHARACTER;
+
+    //container of an entity that is not in any location
+    public static final int NOWHERE = -1;
+    //container of an entity in a player's inventory
+    public static final int CARRIED = -2;
+
+    //columns of one row
+    static final int NAME = 0;
+    static final int DESCRIPTION = 1;
+    static final int ENTITY_ID = 2;
+    static final int KIND = 3;
+    static final int CONTAINER = 4;
+    static final int HOLDERS = 5;
+    static final int FIELDS = 6;
+
+    //entities built without a world, e.g. in tests
+    private static final WorldStore SHARED = new WorldStore();
+
+    /**
+    * Where the rows and descriptions live. Reads may come from any thread; writes and
+    * growth only happen while the store's lock is held.
+    */
+    interface Columns {
+        int capacity();
+
+        //keep the existing rows and make room for at least this many
+        void grow(int capacity);
+
+        int get(int row, int field);
+
+        void set(int row, int field, int value);
+
+        //keep a description, returning the ID for the DESCRIPTION column
+        int addDescription(String description);
+
+        String description(int id);
+    }
+
+    private final Columns columns;
+    private volatile int count;
+    //released rows, reused before the store grows
+    private int[] freeRows = new int[16];
+    private int freeCount;
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private volatile String[] names = new String[64];
+
+    public WorldStore() {
+        this(new HeapColumns());
+    }
+
+    WorldStore(Columns columns) {
+        this.columns = columns;
+    }
+
+    public static WorldStore shared() {
+        return SHARED;
+    }
+
+    //rows and descriptions in direct buffers outside the heap
+    public static WorldStore offHeap() {
+        return new WorldStore(new OffHeapColumns(null));
+    }
+
+    //rows and descriptions in buffers mapped from files next to this path
+    public static WorldStore mapped(Path file) {
+        return new WorldStore(new OffHeapColumns(file));
+    }
+
+    //add a row not in any container yet, reusing a released row when there is one
+    public synchronized int add(String name, String description, int kind) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            row = count;
+            if (row == columns.capacity()) {
+                columns.grow(row * 2);
+            }
+        }
+        columns.set(row, NAME, this.internName(name));
+        columns.set(row, DESCRIPTION, columns.addDescription(description));
+        columns.set(row, ENTITY_ID, EntityIds.of(name));
+        columns.set(row, CONTAINER, NOWHERE);
+        columns.set(row, HOLDERS, 0);
+        columns.set(row, KIND, kind);
+        if (row == count) {
+            count = row + 1;
+        }
+        return row;
+    }
+
+    //free the row of an entity that is gone for good, unless a list or inventory still holds it
+    public synchronized boolean release(int row) {
+        if (columns.get(row, HOLDERS) > 0 || columns.get(row, KIND) == 0) {
+            return false;
+        }
+        //kind 0 keeps the row out of every scan until it is reused
+        columns.set(row, KIND, 0);
+        columns.set(row, CONTAINER, NOWHERE);
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+        return true;
+    }
+
+    private int internName(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = nameIds.size();
+            if (id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+            }
+            names[id] = name;
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    //rows ever used, released ones included
+    public int size() {
+        return count;
+    }
+
+    public synchronized int liveRows() {
+        return count - freeCount;
+    }
+
+    public String name(int row) {
+        return names[columns.get(row, NAME)];
+    }
+
+    public String description(int row) {
+        return columns.description(columns.get(row, DESCRIPTION));
+    }
+
+    public int entityId(int row) {
+        return columns.get(row, ENTITY_ID);
+    }
+
+    public int kind(int row) {
+        return columns.get(row, KIND);
+    }
+
+    public synchronized void setKind(int row, int kind) {
+        columns.set(row, KIND, kind);
+    }
+
+    //row of the location holding this entity, or NOWHERE / CARRIED
+    public int container(int row) {
+        return columns.get(row, CONTAINER);
+    }
+
+    public synchronized void setContainer(int row, int container) {
+        columns.set(row, CONTAINER, container);
+    }
+
+    //the entity was added to a list or inventory
+    public synchronized void enterContainer(int row, int container) {
+        columns.set(row, CONTAINER, container);
+        columns.set(row, HOLDERS, columns.get(row, HOLDERS) + 1);
+    }
+
+    //clear the container only if the entity is still recorded in this one
+    public synchronized void leaveContainer(int row, int container) {
+        if (columns.get(row, CONTAINER) == container) {
+            columns.set(row, CONTAINER, NOWHERE);
+        }
+        columns.set(row, HOLDERS, Math.max(0, columns.get(row, HOLDERS) - 1));
+    }
+
+    //a passivated player's record holds the row like an inventory would, so it is not released meanwhile
+    public synchronized void hold(int row) {
+        columns.set(row, HOLDERS, columns.get(row, HOLDERS) + 1);
+    }
+
+    //the record gave the row back to a restored inventory, which holds it now; never releases it
+    public synchronized void unhold(int row) {
+        columns.set(row, HOLDERS, Math.max(0, columns.get(row, HOLDERS) - 1));
+    }
+
+    //names of every row of these kinds, in the order they were added
+    public Set<String> names(int kindMask) {
+        Set<String> found = new LinkedHashSet<>();
+        for (int row = 0, rows = count; row < rows; row++) {
+            if ((columns.get(row, KIND) & kindMask) != 0) {
+                found.add(this.name(row));
+            }
+        }
+        return found;
+    }
+
+    //names of the locations holding at least one entity of these kinds
+    public Set<String> locationsHolding(int kindMask) {
+        Set<String> found = new LinkedHashSet<>();
+        for (int row = 0, rows = count; row < rows; row++) {
+            int container = columns.get(row, CONTAINER);
+            if ((columns.get(row, KIND) & kindMask) != 0 && container >= 0) {
+                found.add(this.name(container));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("WorldStore[rows=%d, free=%d, names=%d, %s]", count, freeCount, nameIds.size(), columns);
+    }
+
+    //one int array per column, descriptions interned like names
+    private static final class HeapColumns implements Columns {
+        private volatile int[][] fields = new int[FIELDS][64];
+        private final Map<String, Integer> descriptionIds = new HashMap<>();
+        private volatile String[] descriptions = new String[64];
+
+        @Override
+        public int capacity() {
+            return fields[NAME].length;
+        }
+
+        @Override
+        public void grow(int capacity) {
+            int[][] grown = new int[FIELDS][];
+            for (int field = 0; field < FIELDS; field++) {
+                grown[field] = Arrays.copyOf(fields[field], capacity);
+            }
+            fields = grown;
+        }
+
+        @Override
+        public int get(int row, int field) {
+            return fields[field][row];
+        }
+
+        @Override
+        public void set(int row, int field, int value) {
+            fields[field][row] = value;
+        }
+
+        @Override
+        public int addDescription(String description) {
+            Integer id = descriptionIds.get(description);
+            if (id == null) {
+                id = descriptionIds.size();
+                if (id == descriptions.length) {
+                    descriptions = Arrays.copyOf(descriptions, id * 2);
+                }
+                descriptions[id] = description;
+                descriptionIds.put(description, id);
+            }
+            return id;
+        }
+
+        @Override
+        public String description(int id) {
+            return descriptions[id];
+        }
+
+        @Override
+        public String toString() {
+            return "heap";
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 //import java.util.ArrayList;
 import java.io.IOException;
 import java.io.File;
+import java.util.HashSet;
+import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
@@ -14,6 +16,7 @@ import org.w3c.dom.NodeList;
 
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 final class ActionsFileTests {
 
@@ -41,4 +44,23 @@ final class ActionsFileTests {
       }
   }
 
+  // Trigger lookups should only return the actions that list that trigger, in file order
+  @Test
+  void testActionIndexCandidates() {
+      List<GameAction> actions = AnalyzeXML.AnalyzeXMLs(new File("config" + File.separator + "extended-actions.xml"), new HashSet<>(), new HashSet<>());
+      Vocabulary vocabulary = new Vocabulary();
+      for (GameAction action : actions) {
+          action.getTriggers().forEach(trigger -> vocabulary.intern(trigger, Vocabulary.TRIGGER));
+          action.getSubjects().forEach(subject -> vocabulary.intern(subject, Vocabulary.SUBJECT));
+      }
+      ActionIndex index = new ActionIndex(actions, vocabulary);
+      int open = vocabulary.id("open");
+      List<GameAction> candidates = index.candidates(open);
+      assertEquals(2, candidates.size(), "'open' should lead to the trapdoor and the potion actions");
+      assertTrue(candidates.get(0).getSubjects().contains("trapdoor"), "Candidates lost the file order");
+      assertEquals(1, index.match(open, new int[] {vocabulary.id("potion")}).size(), "Subjects should narrow 'open' to one action");
+      assertEquals(0, index.match(open, new int[] {vocabulary.id("axe")}).size(), "No 'open' action uses the axe");
+      assertTrue(index.candidates(Vocabulary.UNKNOWN).isEmpty(), "Unknown trigger should have no candidates");
+  }
+
 }
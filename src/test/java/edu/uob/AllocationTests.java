@@ -0,0 +1,64 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+final class AllocationTests {
+
+  private GameServer server;
+  private PrintStream originalOut;
+
+  @BeforeEach
+  void setup() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      server = new GameServer(entitiesFile, actionsFile);
+      //keep any remaining output from flooding the test log
+      originalOut = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @AfterEach
+  void restoreOut() {
+      System.setOut(originalOut);
+  }
+
+  private static long allocatedBytes() {
+      return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+  }
+
+  //average bytes allocated by the calling thread per command, after a warm-up
+  private long bytesPerCommand(String command) {
+      for (int i = 0; i < 20_000; i++) {
+          server.handleCommand(command);
+      }
+      int iterations = 20_000;
+      long before = allocatedBytes();
+      for (int i = 0; i < iterations; i++) {
+          server.handleCommand(command);
+      }
+      return (allocatedBytes() - before) / iterations;
+  }
+
+  // Parsing, matching and processor reuse should not allocate per command, and with debug
+  // logging off (the default) nothing is formatted either; what is left is mostly the response
+  @Test
+  void testPerCommandAllocation() {
+      server.handleCommand("simon: get axe");
+      String[] commands = {"simon: health", "simon: inv", "simon: open the trapdoor with the key", "simon: xyzzy"};
+      for (String command : commands) {
+          long bytes = bytesPerCommand(command);
+          assertTrue(bytes < 2 * 1024, String.format("'%s' allocated %d bytes per command", command, bytes));
+      }
+  }
+
+}
@@ -0,0 +1,70 @@
+package edu.uob;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+* Rough comparison of the old regex/split command parsing with {@link CommandTokenizer}.
+*
+* <p>Not a unit test (surefire does not pick it up). Run it with
+* {@code mvn test-compile exec:java@tokenizer-benchmark}.
+*/
+public final class CommandTokenizerBenchmark {
+
+    private static final String[] LINES = {
+            "simon: look", "simon: get axe", "sion: open the trapdoor with the key",
+            "simon: Cut Down The Tree With The Axe", "sion: goto forest", "simon: inv"
+    };
+    private static final int ITERATIONS = 2_000_000;
+
+    //the per-command work GameServer.handleCommand and parseCommand did before the tokenizer
+    private static int legacy(String line) {
+        List<String> commandParts = new LinkedList<>(List.of(line.split(":", 2)));
+        String playerName = commandParts.get(0).trim();
+        String playerCommand = commandParts.get(1).trim();
+        if (!playerName.matches("^[a-zA-Z0-9_'\\-@]+$")) {
+            return -1;
+        }
+        String cleanedInput = playerCommand.trim().replaceAll("^\\w+:\\s*", "");
+        List<String> words = new LinkedList<>(List.of(cleanedInput.trim().toLowerCase().split("\\s+")));
+        return words.size();
+    }
+
+    private static int tokenizer(CommandTokenizer tokenizer, String line) {
+        if (tokenizer.tokenizeLine(line) != CommandTokenizer.Status.OK) {
+            return -1;
+        }
+        return tokenizer.tokenCount();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static void report(String name, long nanos, long bytes, long sink) {
+        System.out.println(String.format("%-10s %8.1f ns/op %8.1f bytes/op (sink %d)",
+                name, (double) nanos / ITERATIONS, (double) bytes / ITERATIONS, sink));
+    }
+
+    public static void main(String[] args) {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        for (int round = 0; round < 3; round++) {
+            long sink = 0;
+            long bytes = CommandTokenizerBenchmark.allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += CommandTokenizerBenchmark.legacy(LINES[i % LINES.length]);
+            }
+            CommandTokenizerBenchmark.report("legacy", System.nanoTime() - start, CommandTokenizerBenchmark.allocatedBytes() - bytes, sink);
+
+            sink = 0;
+            bytes = CommandTokenizerBenchmark.allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += CommandTokenizerBenchmark.tokenizer(tokenizer, LINES[i % LINES.length]);
+            }
+            CommandTokenizerBenchmark.report("tokenizer", System.nanoTime() - start, CommandTokenizerBenchmark.allocatedBytes() - bytes, sink);
+        }
+    }
+}
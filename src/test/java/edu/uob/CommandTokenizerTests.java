@@ -0,0 +1,117 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+final class CommandTokenizerTests {
+
+  private static List<String> tokens(CommandTokenizer tokenizer) {
+      List<String> tokens = new ArrayList<>();
+      for (int i = 0; i < tokenizer.tokenCount(); i++) {
+          tokens.add(tokenizer.token(i));
+      }
+      return tokens;
+  }
+
+  // The tokenizer should give the same words as the old trim/replaceAll/toLowerCase/split chain
+  @Test
+  void testMatchesRegexSplit() {
+      CommandTokenizer tokenizer = new CommandTokenizer();
+      String[] lines = {"simon: look", "  Simon :  Open   the TRAPDOOR\twith key  ", "sion: simon: get axe", "bob: Ünlock Äxe"};
+      for (String line : lines) {
+          assertEquals(CommandTokenizer.Status.OK, tokenizer.tokenizeLine(line), "Valid line rejected: " + line);
+          String command = line.split(":", 2)[1].trim().replaceAll("^\\w+:\\s*", "");
+          List<String> expected = List.of(command.trim().toLowerCase().split("\\s+"));
+          assertEquals(expected, tokens(tokenizer), "Tokens differ from the regex split for: " + line);
+      }
+  }
+
+  @Test
+  void testPlayerNames() {
+      CommandTokenizer tokenizer = new CommandTokenizer();
+      assertEquals(CommandTokenizer.Status.MISSING_PLAYER, tokenizer.tokenizeLine("look"), "No colon means no player");
+      assertEquals(CommandTokenizer.Status.INVALID_PLAYER, tokenizer.tokenizeLine(" : look"), "Empty player name accepted");
+      assertEquals(CommandTokenizer.Status.INVALID_PLAYER, tokenizer.tokenizeLine("si mon: look"), "Space in player name accepted");
+      assertEquals(CommandTokenizer.Status.INVALID_PLAYER, tokenizer.tokenizeLine("sim$n: look"), "Symbol in player name accepted");
+      assertEquals(CommandTokenizer.Status.OK, tokenizer.tokenizeLine(" o'neil-2@x_y : look"), "Valid player name rejected");
+      assertEquals("o'neil-2@x_y", tokenizer.getPlayerName(), "Player name should be trimmed");
+      tokenizer.tokenizeLine("simon:   ");
+      assertTrue(tokenizer.isBlank(), "Command with only spaces should be blank");
+  }
+
+  private static List<String> phrases(KeyphraseMatcher matcher, String command) {
+      CommandTokenizer tokenizer = new CommandTokenizer();
+      tokenizer.tokenizeCommand(command);
+      KeyphraseMatcher.Matches matches = matcher.scan(tokenizer.chars(), tokenizer.length(), new KeyphraseMatcher.Matches());
+      List<String> phrases = new ArrayList<>();
+      for (int i = 0; i < matches.size(); i++) {
+          phrases.add(matches.phrase(i));
+      }
+      return phrases;
+  }
+
+  // Longest whole-word phrases win, and phrases never overlap
+  @Test
+  void testKeyphraseMatcher() {
+      Vocabulary vocabulary = new Vocabulary();
+      vocabulary.intern("cut", Vocabulary.TRIGGER);
+      vocabulary.intern("Cut  Down", Vocabulary.TRIGGER);
+      vocabulary.intern("down", Vocabulary.ENTITY);
+      vocabulary.intern("tree", Vocabulary.ENTITY);
+      vocabulary.intern("old tree", Vocabulary.ENTITY);
+      vocabulary.intern("axe", Vocabulary.ENTITY);
+      vocabulary.mark("axe", Vocabulary.SUBJECT);
+      vocabulary.mark("shovel", Vocabulary.SUBJECT);
+      KeyphraseMatcher matcher = new KeyphraseMatcher(vocabulary);
+      assertEquals(List.of("cut down", "old tree", "axe"), phrases(matcher, "please CUT down the old tree with the axe"));
+      assertEquals(List.of("cut", "tree"), phrases(matcher, "cut the tree with axes"), "Phrases must match whole words only");
+      assertEquals(List.of("down", "tree"), phrases(matcher, "recut down tree"), "A phrase inside a word must not match");
+      KeyphraseMatcher.Matches matches = matcher.scan("axe".toCharArray(), 3, new KeyphraseMatcher.Matches());
+      assertEquals(vocabulary.id("axe"), matches.id(0), "Matches should report vocabulary IDs");
+      assertTrue(matches.is(0, Vocabulary.SUBJECT) && matches.is(0, Vocabulary.ENTITY), "Categories were not merged");
+      assertEquals(Vocabulary.UNKNOWN, vocabulary.id("shovel"), "mark() must not add new words");
+      assertEquals(vocabulary.id("cut down"), vocabulary.id(" CUT   down "), "Lookups should be normalized");
+  }
+
+  // Repeated commands should come from the cache, and a new vocabulary must empty it
+  @Test
+  void testCommandCache() {
+      CommandCache cache = new CommandCache(2);
+      Vocabulary vocabulary = new Vocabulary();
+      HandleInputCommand.Command look = new HandleInputCommand.Command("look", List.of());
+      assertNull(cache.get(vocabulary, "look"), "Empty cache should miss");
+      cache.put(vocabulary, "look", look);
+      cache.put(vocabulary, "inv", new HandleInputCommand.Command("inv", List.of()));
+      assertSame(look, cache.get(vocabulary, "look"), "Cached command should be returned as is");
+      cache.put(vocabulary, "get axe", new HandleInputCommand.Command("get", List.of("axe")));
+      assertNull(cache.get(vocabulary, "inv"), "Least recently used entry should have been evicted");
+      assertSame(look, cache.get(vocabulary, "look"), "Recently used entry was evicted");
+      assertNull(cache.get(new Vocabulary(), "look"), "A new vocabulary should invalidate the cache");
+      assertEquals(0, cache.size(), "Invalidated cache should be empty");
+      assertEquals(2, cache.getHits(), "Wrong hit count");
+      assertEquals(3, cache.getMisses(), "Wrong miss count");
+  }
+
+  @Test
+  void testServerUsesCommandCache() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      CommandCache cache = HandleInputCommand.getCommandCache();
+      assertEquals(0, cache.size(), "Loading a game should clear the cache");
+      String first = server.handleCommand("simon: LOOK");
+      long hits = cache.getHits();
+      assertEquals(first, server.handleCommand("simon:   look "), "Cached parse changed the response");
+      assertEquals(hits + 1, cache.getHits(), "Same normalized command should hit the cache");
+  }
+
+}
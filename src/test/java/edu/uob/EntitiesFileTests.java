@@ -1,10 +1,16 @@
 package edu.uob;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import com.alexmerz.graphviz.Parser;
 import com.alexmerz.graphviz.ParseException;
 import com.alexmerz.graphviz.objects.Graph;
@@ -13,6 +19,8 @@ import com.alexmerz.graphviz.objects.Edge;
 
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 final class EntitiesFileTests {
 
@@ -52,4 +60,184 @@ final class EntitiesFileTests {
       }
   }
 
+  // Presence bits must follow every way entities leave a location, and survive duplicates
+  @Test
+  void testLocationPresenceTracksLists() {
+      GameEntity.Location cabin = new GameEntity.Location("cabin", "A log cabin");
+      GameEntity.Item log = new GameEntity.Item("log", "A heavy log");
+      cabin.addItem(log);
+      cabin.addItem(new GameEntity.Item("Log", "Another log"));
+      cabin.addFurniture(new GameEntity.Item("trapdoor", "A trapdoor"));
+      long[] needsLogAndTrapdoor = EntityIds.bitsOf(List.of("log", "trapdoor", "health"));
+
+      assertEquals(-1, EntityPresence.firstMissing(needsLogAndTrapdoor, cabin.getItemPresence(), cabin.getFixturePresence(), null));
+      cabin.removeItem("log");
+      assertTrue(cabin.getItemPresence().contains(log.getEntityId()), "Second log should still be present");
+      Iterator<GameEntity> items = cabin.getItems().iterator();
+      items.next();
+      items.remove();
+      assertFalse(cabin.getItemPresence().contains(log.getEntityId()), "Removing through the iterator was not tracked");
+      assertEquals(log.getEntityId(), EntityPresence.firstMissing(needsLogAndTrapdoor, cabin.getItemPresence(), cabin.getFixturePresence(), null));
+      cabin.getFurniture().clear();
+      assertFalse(cabin.getFixturePresence().contains(EntityIds.of("trapdoor")), "clear() was not tracked");
+  }
+
+  // The name index must agree with list order, including duplicates and inserts in the middle
+  @Test
+  void testEntityIndexKeepsOrder() {
+      EntityIndex<GameEntity> index = new EntityIndex<>(new EntityPresence());
+      GameEntity firstKey = new GameEntity.Item("key", "First key");
+      GameEntity coin = new GameEntity.Item("coin", "A coin");
+      GameEntity secondKey = new GameEntity.Item("key", "Second key");
+      index.add(firstKey);
+      index.add(coin);
+      index.add(secondKey);
+      GameEntity middleKey = new GameEntity.Item("key", "Middle key");
+      index.add(2, middleKey);
+
+      assertEquals(List.of(firstKey, coin, middleKey, secondKey), new ArrayList<>(index));
+      assertTrue(index.contains(secondKey), "Second key not found by instance");
+      assertFalse(index.contains(new GameEntity.Item("key", "Unrelated key")), "Matched a different instance with the same name");
+      assertTrue(index.removeFirst("key"));
+      assertEquals(middleKey, index.find("key"), "The key inserted in the middle should now come first");
+      assertTrue(index.remove(middleKey));
+      assertEquals(secondKey, index.find("key"));
+      index.remove(secondKey);
+      assertFalse(index.containsName("key"), "Name still indexed after its last entity was removed");
+      assertEquals(List.of(coin), new ArrayList<>(index));
+  }
+
+  // Entities loaded from the file are rows of one store, which follows them between containers
+  @Test
+  void testWorldStoreTracksKindsAndContainers() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      AnalyzeDot.AnalysisResult result = AnalyzeDot.analyzeDots(entitiesFile, new StringBuilder(), new HashSet<>());
+      WorldStore world = result.world;
+      assertTrue(world.names(WorldStore.LOCATION).contains("cabin"), "cabin is not a location row");
+      assertTrue(world.names(WorldStore.FURNITURE).contains("trapdoor"), "trapdoor is not a furniture row");
+      assertTrue(world.names(WorldStore.CHARACTER).contains("elf"), "elf is not a character row");
+
+      GameEntity.Location cabin = result.locations.get("cabin");
+      GameEntity.Location forest = result.locations.get("forest");
+      GameEntity axe = cabin.getItems().find("axe");
+      assertEquals(WorldStore.ARTEFACT, axe.getKind());
+      assertEquals(cabin.getRow(), world.container(axe.getRow()));
+
+      Player player = new Player(0, "simon", cabin);
+      player.GetItem("axe");
+      assertEquals(WorldStore.CARRIED, world.container(axe.getRow()), "Picked up axe should be carried");
+      player.setLocation(forest);
+      player.dropItem("axe");
+      assertEquals(forest.getRow(), world.container(axe.getRow()), "Dropped axe should be in the forest");
+      assertEquals("axe", world.name(axe.getRow()));
+  }
+
+  // Rows of consumed entities are reused, but never while a location or inventory still holds them
+  @Test
+  void testConsumedRowsAreReused() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      WorldStore world = server.getWorld();
+      int live = world.liveRows();
+      server.handleCommand("simon: get potion");
+      server.handleCommand("simon: drink potion");
+      assertEquals(live - 1, world.liveRows(), "The drunk potion's row was not released");
+
+      GameEntity.Location cabin = server.getMultiPlayerHandler().getPlayers().get("simon").getLocation();
+      int rows = world.size();
+      for (int i = 0; i < 1000; i++) {
+          GameEntity coin = new GameEntity.Item(world, "coin", "A coin");
+          cabin.addItem(coin);
+          cabin.getItems().takeFirst("coin").discard();
+      }
+      assertTrue(world.size() <= rows + 1, "Produce and consume kept adding rows");
+
+      // a produced item sits in the location and the pack, so consuming one copy keeps the row
+      GameEntity shared = new GameEntity.Item(world, "log", "Generated by action");
+      cabin.addItem(shared);
+      Player player = new Player(0, "sion", cabin);
+      player.addInPack(shared);
+      player.getInventory().remove(shared);
+      shared.discard();
+      assertEquals("log", world.name(shared.getRow()), "Row released while the location still held it");
+      assertTrue(cabin.getItems().contains(shared));
+  }
+
+  // Off-heap and mapped stores must hold the same rows as the heap one, across growth
+  @Test
+  void testOffHeapWorldStores(@TempDir Path directory) {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      String expected = new GameServer(entitiesFile, actionsFile).handleCommand("simon: look");
+      for (WorldStore world : List.of(WorldStore.offHeap(), WorldStore.mapped(directory.resolve("world.rows")))) {
+          GameServer server = new GameServer(entitiesFile, actionsFile, world);
+          assertEquals(expected, server.handleCommand("simon: look"), "Look differs for " + world);
+
+          int first = world.size();
+          for (int i = 0; i < 5000; i++) {
+              world.add("coin" + i, "A coin numbered " + i, WorldStore.ARTEFACT);
+          }
+          assertEquals("coin4999", world.name(first + 4999));
+          assertEquals("A coin numbered 4999", world.description(first + 4999));
+          assertEquals("A coin numbered 0", world.description(first));
+          assertEquals(WorldStore.NOWHERE, world.container(first + 10));
+          assertTrue(server.handleCommand("simon: look").contains("cabin"), "Rows loaded from the file were lost when growing");
+      }
+
+      //every distinct description is stored once, not only runs of the same one
+      OffHeapColumns columns = new OffHeapColumns(null);
+      int first = columns.addDescription("A coin");
+      for (int i = 0; i < 5000; i++) {
+          columns.addDescription("A coin numbered " + i);
+      }
+      assertEquals(first, columns.addDescription("A coin"), "Description was stored twice");
+      assertEquals(columns.addDescription("A coin numbered 7"), columns.addDescription("A coin numbered 7"), "Description was stored twice");
+      assertEquals("A coin numbered 4999", columns.description(columns.addDescription("A coin numbered 4999")));
+  }
+
+  // Consumed items and furniture are taken by exact name, characters in any case
+  @Test
+  void testConsumeMatchesNamesExactly() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      AnalyzeDot.AnalysisResult result = AnalyzeDot.analyzeDots(entitiesFile, new StringBuilder(), new HashSet<>());
+      GameEntity.Location forest = result.locations.get("forest");
+      GameEntity paintedTree = new GameEntity.Item(result.world, "Tree", "A painted tree");
+      forest.getFurniture().add(0, paintedTree);
+      GameAction chop = null;
+      for (GameAction action : AnalyzeXML.AnalyzeXMLs(actionsFile, new HashSet<>(), new HashSet<>())) {
+          if (action.getConsumed().contains("tree")) {
+              chop = action;
+          }
+      }
+
+      Player player = new Player(0, "simon", forest);
+      ActionPlan.compile(chop, result.locations).execute(player, new Health(forest));
+      assertFalse(forest.getFurniture().containsName("tree"), "The tree was not consumed");
+      assertTrue(forest.getFurniture().contains(paintedTree), "Consumed furniture whose name only matched ignoring case");
+  }
+
+  @Test
+  void testConsumeFromPackMatchesNamesExactly() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      AnalyzeDot.AnalysisResult result = AnalyzeDot.analyzeDots(entitiesFile, new StringBuilder(), new HashSet<>());
+      GameEntity.Location cabin = result.locations.get("cabin");
+      GameAction unlock = null;
+      for (GameAction action : AnalyzeXML.AnalyzeXMLs(actionsFile, new HashSet<>(), new HashSet<>())) {
+          if (action.getConsumed().contains("key")) {
+              unlock = action;
+          }
+      }
+
+      Player player = new Player(0, "simon", cabin);
+      GameEntity paintedKey = new GameEntity.Item(result.world, "Key", "A painted key");
+      player.addInPack(paintedKey);
+      player.addInPack(new GameEntity.Item(result.world, "key", "A brass key"));
+      ActionPlan.compile(unlock, result.locations).execute(player, new Health(cabin));
+      assertFalse(player.checkPack("key"), "The key was not consumed from the pack");
+      assertTrue(player.getInventory().contains(paintedKey), "Consumed a pack item whose name only matched ignoring case");
+  }
+
 }
@@ -2,6 +2,7 @@ package edu.uob;
 
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -684,11 +685,40 @@ class ExampleSTAGTests {
         System.out.println("=== All map-based actions tested successfully ===");
     }
 
+  // Multi-word trigger keyphrases should be matched as a whole phrase
+  @Test
+  void testMultiWordTrigger() {
+      sendCommandToServer("simon: get axe");
+      sendCommandToServer("simon: goto forest");
+      String response = sendCommandToServer("simon: please Cut  Down the tree using the axe").toLowerCase();
+      assertTrue(response.contains("you cut down the tree with the axe"), "'cut down' was not matched as a trigger");
+      response = sendCommandToServer("simon: look").toLowerCase();
+      assertTrue(response.contains("log"), "Did not see the log after cutting down the tree");
+  }
 
-}
- 
-
-
-
+  // Look reuses the rendered room until its contents change, and lists only players standing there
+  @Test
+  void testLookCacheAndOccupancy() {
+      String first = sendCommandToServer("simon: look");
+      assertSame(first, sendCommandToServer("simon: look"), "Unchanged room was rendered again");
+      sendCommandToServer("simon: get axe");
+      String response = sendCommandToServer("simon: look");
+      assertFalse(response.contains("axe"), "Look still shows the axe after it was picked up");
+      sendCommandToServer("sion: look");
+      assertTrue(sendCommandToServer("simon: look").contains("- sion"), "Did not see the other player in the room");
+      sendCommandToServer("sion: goto forest");
+      assertFalse(sendCommandToServer("simon: look").contains("- sion"), "Still saw a player who had left");
+      assertFalse(sendCommandToServer("sion: look").contains("- simon"), "Saw a player from another room");
+  }
 
+  // Per-player processors are only kept for recently active players
+  @Test
+  void testProcessorCacheIsBounded() {
+      for (int i = 0; i <= GameServer.MAX_CACHED_PROCESSORS; i++) {
+          server.handleCommand("bot" + i + ": inv");
+      }
+      assertTrue(server.getCachedProcessorCount() <= GameServer.MAX_CACHED_PROCESSORS, "Processor cache grew past its bound");
+      assertTrue(sendCommandToServer("bot0: look").contains("cabin"), "Evicted player could not play again");
+  }
 
+}
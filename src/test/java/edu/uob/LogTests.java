@@ -0,0 +1,67 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+final class LogTests {
+
+  private PrintStream originalOut;
+  private Log.Level originalLevel;
+  private ByteArrayOutputStream captured;
+
+  @BeforeEach
+  void setup() {
+      Log.flush(1000);
+      originalOut = System.out;
+      originalLevel = Log.getLevel();
+      captured = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+  }
+
+  @AfterEach
+  void restore() {
+      Log.flush(1000);
+      System.setOut(originalOut);
+      Log.setLevel(originalLevel);
+  }
+
+  private String output() {
+      assertTrue(Log.flush(5000), "Log writer did not catch up");
+      return captured.toString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+  }
+
+  // Messages below the level are dropped, the rest are formatted by the writer in call order
+  @Test
+  void testLevelsAndOrder() {
+      Log.setLevel(Log.Level.INFO);
+      Log.debug("[Debug] hidden %s", "value");
+      Log.info("first %s", "info");
+      Log.setLevel(Log.Level.DEBUG);
+      Log.debug("[Debug] %s then %d", "second", 2);
+      Log.info("third");
+      assertEquals("first info\n[Debug] second then 2\nthird\n", output());
+  }
+
+  @Test
+  void testOffSilencesEverything() {
+      Log.setLevel(Log.Level.OFF);
+      Log.error("[Error] hidden");
+      Log.debug("[Debug] hidden");
+      assertEquals("", output());
+  }
+
+  // The server's --log-level option picks the level
+  @Test
+  void testLogLevelOption() {
+      assertEquals(Log.Level.INFO, ServerOptions.fromArgs(new String[0]).getLogLevel());
+      assertEquals(Log.Level.DEBUG, ServerOptions.fromArgs(new String[] {"--log-level=debug"}).getLogLevel());
+  }
+}
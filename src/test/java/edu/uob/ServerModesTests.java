@@ -0,0 +1,618 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+class ServerModesTests {
+
+  private static final char END_OF_TRANSMISSION = 4;
+
+  private GameServer server;
+  private Closeable networkServer;
+  private Thread listener;
+
+  @BeforeEach
+  void setup() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      server = new GameServer(entitiesFile, actionsFile);
+  }
+
+  @AfterEach
+  void teardown() throws IOException {
+      if (listener != null) {
+          listener.interrupt();
+      }
+      if (networkServer != null) {
+          networkServer.close();
+      }
+  }
+
+  private int startSelectorServer(ServerOptions options) throws IOException {
+      SelectorServer selectorServer = new SelectorServer(server, options);
+      int port = selectorServer.open(0);
+      startListener(selectorServer, selectorServer::run);
+      return port;
+  }
+
+  private int startThreadedServer(ServerOptions options) throws IOException {
+      ThreadedServer threadedServer = new ThreadedServer(server, options);
+      int port = threadedServer.open(0);
+      startListener(threadedServer, threadedServer::run);
+      return port;
+  }
+
+  private interface Listener {
+      void run() throws IOException;
+  }
+
+  private void startListener(Closeable serverToClose, Listener body) {
+      networkServer = serverToClose;
+      listener = new Thread(() -> {
+          try {
+              body.run();
+          } catch (IOException e) {
+              System.out.println("Listener stopped");
+          }
+      });
+      listener.start();
+  }
+
+  // read lines until the END_OF_TRANSMISSION marker
+  private static String readResponse(BufferedReader reader) throws IOException {
+      StringBuilder response = new StringBuilder();
+      String line = reader.readLine();
+      while (line != null && !line.contains(String.valueOf(END_OF_TRANSMISSION))) {
+          response.append(line).append("\n");
+          line = reader.readLine();
+      }
+      return response.toString();
+  }
+
+  private static String sendOverSocket(int port, String command) {
+      return assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port);
+               BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+              writer.write(command + "\n");
+              writer.flush();
+              return readResponse(reader);
+          }
+      }, "Server took too long to respond over the socket");
+  }
+
+  @Test
+  void testSelectorServerServesCommands() throws IOException {
+      int port = startSelectorServer(new ServerOptions().setIoThreads(2));
+      String response = sendOverSocket(port, "simon: look").toLowerCase();
+      assertTrue(response.contains("log cabin"), "Did not see the cabin through the selector server");
+
+      sendOverSocket(port, "simon: get potion");
+      response = sendOverSocket(port, "simon: inv").toLowerCase();
+      assertTrue(response.contains("potion"), "World state was not kept between selector connections");
+  }
+
+  @Test
+  void testSelectorServerHandlesManyClients() throws Exception {
+      int port = startSelectorServer(new ServerOptions().setIoThreads(2));
+      Thread[] clients = new Thread[16];
+      boolean[] seen = new boolean[clients.length];
+      for (int i = 0; i < clients.length; i++) {
+          int index = i;
+          clients[i] = new Thread(() -> seen[index] = sendOverSocket(port, "player" + index + ": look").contains("cabin"));
+          clients[i].start();
+      }
+      for (Thread client : clients) {
+          client.join();
+      }
+      for (boolean clientSawCabin : seen) {
+          assertTrue(clientSawCabin, "A concurrent client did not get a full response");
+      }
+  }
+
+  @Test
+  void testThreadedServerKeepsWorldConsistent() throws Exception {
+      int port = startThreadedServer(new ServerOptions().setGameQueueCapacity(4));
+      Thread[] clients = new Thread[16];
+      for (int i = 0; i < clients.length; i++) {
+          int index = i;
+          clients[i] = new Thread(() -> sendOverSocket(port, "player" + index + ": get potion"));
+          clients[i].start();
+      }
+      for (Thread client : clients) {
+          client.join();
+      }
+      // only one of the concurrent players can have picked the potion up
+      int holders = 0;
+      for (int i = 0; i < clients.length; i++) {
+          if (sendOverSocket(port, "player" + i + ": inv").contains("potion")) {
+              holders++;
+          }
+      }
+      assertEquals(1, holders, "The potion should end up in exactly one inventory");
+  }
+
+  // several commands over one connection, each answered with its own END_OF_TRANSMISSION
+  private static void assertSessionWorks(int port) {
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port);
+               BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+              writer.write("simon: get potion\n");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("potion"), "First command in the session failed");
+              writer.write("simon: inv\n");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("potion"), "Second command in the session failed");
+              writer.write("simon: goto forest\n");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("forest"), "Third command in the session failed");
+          }
+      }, "Session commands took too long");
+  }
+
+  @Test
+  void testSessionOnSelectorServer() throws IOException {
+      assertSessionWorks(startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  @Test
+  void testSessionOnThreadedServer() throws IOException {
+      assertSessionWorks(startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  @Test
+  void testIdleSessionIsClosed() throws IOException {
+      int port = startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(100));
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port);
+               BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+              assertNull(reader.readLine(), "Idle session should be closed by the server");
+          }
+      }, "Idle session was not closed");
+  }
+
+  // N commands written without waiting must come back as N responses in order
+  private static void assertPipelineWorks(int port) {
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port);
+               BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+              writer.write("simon: get axe\nsimon: goto forest\nsimon: chop tree with axe\nsimon: look\n");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("picked up axe"), "First pipelined response out of order");
+              assertTrue(readResponse(reader).contains("forest"), "Second pipelined response out of order");
+              assertTrue(readResponse(reader).contains("cut down"), "Third pipelined response out of order");
+              assertTrue(readResponse(reader).contains("log"), "Fourth pipelined response out of order");
+          }
+      }, "Pipelined commands took too long");
+  }
+
+  @Test
+  void testPipelineOnSelectorServer() throws IOException {
+      assertPipelineWorks(startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  @Test
+  void testPipelineOnThreadedServer() throws IOException {
+      assertPipelineWorks(startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  @Test
+  void testPartialLineDoesNotHoldBackEarlierReplies() throws IOException {
+      int port = startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000));
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port);
+               BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+               Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+              writer.write("simon: get axe\nsimon: goto for");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("picked up axe"), "Complete command was held back by a partial line");
+              writer.write("est\n");
+              writer.flush();
+              assertTrue(readResponse(reader).contains("forest"), "Rest of the partial line was lost");
+          }
+      }, "Reply to the complete command never arrived");
+  }
+
+  // magic byte, then pipelined (player, command) frames answered by one frame each
+  private static void assertBinaryProtocolWorks(int port) {
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port)) {
+              BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+              out.write(BinaryProtocol.MAGIC);
+              BinaryProtocol.FrameWriter writer = new BinaryProtocol.FrameWriter(out);
+              BinaryProtocol.FrameReader reader = new BinaryProtocol.FrameReader(socket.getInputStream());
+              writer.writeFrame("simon");
+              writer.writeFrame("get potion");
+              writer.writeFrame("simon");
+              writer.writeFrame("inv");
+              writer.writeFrame("simon");
+              writer.writeFrame("drink potion");
+              writer.flush();
+              assertTrue(reader.readFrame().contains("picked up potion"), "First binary response was wrong");
+              String inventory = reader.readFrame();
+              assertTrue(inventory.contains("potion"), "Second binary response was wrong");
+              assertFalse(inventory.contains(String.valueOf(END_OF_TRANSMISSION)), "Binary frames should not carry the text terminator");
+              // narrations are written from pre-encoded fragments
+              assertEquals("You drink the potion and your health improves", reader.readFrame(), "Static binary response was wrong");
+          }
+      }, "Binary protocol took too long");
+  }
+
+  @Test
+  void testBinaryProtocolOnSelectorServer() throws IOException {
+      assertBinaryProtocolWorks(startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  @Test
+  void testBinaryProtocolOnThreadedServer() throws IOException {
+      assertBinaryProtocolWorks(startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)));
+  }
+
+  // A player name with ':' or a line break would be re-split into another player or command
+  @Test
+  void testBinaryProtocolRejectsUnframeablePlayerNames() throws IOException {
+      int port = startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000));
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          try (Socket socket = new Socket("localhost", port)) {
+              BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+              out.write(BinaryProtocol.MAGIC);
+              BinaryProtocol.FrameWriter writer = new BinaryProtocol.FrameWriter(out);
+              writer.writeFrame("sion: goto forest\nsimon");
+              writer.writeFrame("look");
+              writer.flush();
+              String reply;
+              try {
+                  reply = new BinaryProtocol.FrameReader(socket.getInputStream()).readFrame();
+              } catch (IOException e) {
+                  reply = null;
+              }
+              assertNull(reply, "Connection should be closed without running the command");
+          }
+      }, "Server did not close the connection");
+      assertFalse(server.getMultiPlayerHandler().getPlayers().containsKey("sion"), "Player name was re-split into another player");
+  }
+
+  // A command still waiting for queue space when the executor closes is answered, not left hanging
+  @Test
+  void testGameExecutorRejectsWaitingCommandOnClose() throws Exception {
+      GameLogicExecutor gameLogic = new GameLogicExecutor(server, 1);
+      List<Thread> clients = new ArrayList<>();
+      List<String> responses = Collections.synchronizedList(new ArrayList<>());
+      synchronized (server) {
+          // one command runs (blocked on the server's lock), one is queued, one waits for space
+          for (int i = 0; i < 3; i++) {
+              Thread client = new Thread(() -> responses.add(gameLogic.execute("simon: look")));
+              clients.add(client);
+              client.start();
+          }
+          while (clients.stream().noneMatch(client -> client.getState() == Thread.State.TIMED_WAITING)) {
+              Thread.onSpinWait();
+          }
+          gameLogic.close();
+          assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+              while (responses.isEmpty()) {
+                  Thread.onSpinWait();
+              }
+          }, "Waiting command was never answered");
+          assertEquals("[Error] Game executor is shut down", responses.get(0));
+      }
+      for (Thread client : clients) {
+          client.join(2000);
+          assertFalse(client.isAlive(), "Accepted commands should still run after close");
+      }
+      assertEquals(2, responses.stream().filter(response -> response.contains("cabin")).count());
+  }
+
+  @Test
+  void testAdmissionControlQueuesThenRejects() throws Exception {
+      AdmissionControl admission = new AdmissionControl(1, 1);
+      CountDownLatch running = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Thread holder = new Thread(() -> admission.run(List.of("simon: look"), batch -> {
+          running.countDown();
+          try {
+              release.await();
+          } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+          }
+          return List.of("done");
+      }));
+      holder.start();
+      running.await();
+
+      // one request may wait for the slot, the next is turned away straight away
+      Thread waiter = new Thread(() -> admission.run(List.of("simon: inv"), batch -> List.of("done")));
+      waiter.start();
+      while (admission.getWaiting() == 0) {
+          Thread.onSpinWait();
+      }
+      List<String> rejected = admission.run(List.of("simon: inv"), batch -> List.of("done"));
+      assertEquals(AdmissionControl.BUSY_RESPONSE, rejected.get(0), "Request beyond the queue should be rejected");
+
+      release.countDown();
+      holder.join();
+      waiter.join();
+      assertEquals(1, admission.getRejectedCount(), "One request should have been rejected");
+      assertEquals(1, admission.getQueuedCount(), "One request should have been queued");
+      assertEquals(0, admission.getInFlight(), "All slots should be free again");
+  }
+
+  // Connection threads may wait for a slot, so the threaded listener queues before it turns clients away
+  @Test
+  void testThreadedServerQueuesThenRejects() throws Exception {
+      ThreadedServer threadedServer = new ThreadedServer(server, new ServerOptions().setMaxInFlight(1).setMaxQueued(1));
+      int port = threadedServer.open(0);
+      startListener(threadedServer, threadedServer::run);
+      AdmissionControl admission = threadedServer.getAdmissionControl();
+      String[] responses = new String[2];
+      Thread running = new Thread(() -> responses[0] = sendOverSocket(port, "simon: look"));
+      Thread queued = new Thread(() -> responses[1] = sendOverSocket(port, "sion: look"));
+
+      // holding the server's lock keeps the first command in flight
+      synchronized (server) {
+          running.start();
+          while (admission.getInFlight() == 0) {
+              Thread.onSpinWait();
+          }
+          queued.start();
+          while (admission.getWaiting() == 0) {
+              Thread.onSpinWait();
+          }
+          assertTrue(sendOverSocket(port, "simon: inv").contains(AdmissionControl.BUSY_RESPONSE), "Client beyond the queue should be told the server is busy");
+      }
+      running.join();
+      queued.join();
+      assertTrue(responses[0].contains("cabin") && responses[1].contains("cabin"), "Admitted and queued commands should both run");
+      assertEquals(1, admission.getQueuedCount(), "One command should have been queued");
+      assertEquals(1, admission.getRejectedCount(), "One command should have been rejected");
+  }
+
+  // A selector IO thread never waits for a slot, so a busy server answers at once
+  @Test
+  void testSelectorServerRejectsWithoutWaiting() throws Exception {
+      SelectorServer selectorServer = new SelectorServer(server, new ServerOptions().setIoThreads(2).setMaxInFlight(1).setMaxQueued(1));
+      int port = selectorServer.open(0);
+      startListener(selectorServer, selectorServer::run);
+      AdmissionControl admission = selectorServer.getAdmissionControl();
+      String[] response = new String[1];
+      Thread running = new Thread(() -> response[0] = sendOverSocket(port, "simon: look"));
+
+      synchronized (server) {
+          running.start();
+          while (admission.getInFlight() == 0) {
+              Thread.onSpinWait();
+          }
+          // the next connection goes to the other IO thread, which must not block
+          assertTrue(sendOverSocket(port, "sion: look").contains(AdmissionControl.BUSY_RESPONSE), "Busy selector should reject straight away");
+      }
+      running.join();
+      assertTrue(response[0].contains("cabin"), "Admitted command should still run");
+      assertEquals(0, admission.getQueuedCount(), "Selector IO threads should never queue");
+      assertEquals(1, admission.getRejectedCount(), "One command should have been rejected");
+  }
+
+  @Test
+  void testShutdownDrainsInFlightCommands() throws Exception {
+      int port = startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000));
+      String[] response = new String[1];
+      Thread client = new Thread(() -> response[0] = sendOverSocket(port, "simon: look"));
+      ShutdownReport[] report = new ShutdownReport[1];
+      Thread stopper = new Thread(() -> report[0] = server.shutdown(Duration.ofMillis(1500)));
+
+      // holding the server's lock keeps the command in flight while shutdown starts
+      synchronized (server) {
+          client.start();
+          while (server.getInFlightTracker().getInFlight() == 0) {
+              Thread.onSpinWait();
+          }
+          stopper.start();
+          while (!server.getInFlightTracker().isShuttingDown()) {
+              Thread.onSpinWait();
+          }
+      }
+      client.join();
+      stopper.join();
+
+      assertTrue(response[0].contains("cabin"), "In-flight command should still get its reply");
+      assertEquals(1, report[0].getDrained(), "The in-flight command should be reported as drained");
+      assertEquals(0, report[0].getAborted(), "Nothing should have been aborted");
+      assertThrows(IOException.class, () -> new Socket("localhost", port).close(), "Server should stop accepting");
+  }
+
+  private static HttpResponse<String> post(int port, String path, String body) throws Exception {
+      HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+              .timeout(Duration.ofMillis(2000))
+              .POST(HttpRequest.BodyPublishers.ofString(body))
+              .build();
+      return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  void testHttpGateway() throws Exception {
+      HttpGateway gateway = new HttpGateway(server, new ServerOptions());
+      int port = gateway.open(0);
+      try {
+          HttpResponse<String> response = post(port, "/command", "{\"player\": \"simon\", \"command\": \"get potion\"}");
+          assertEquals(200, response.statusCode(), "Single command should succeed");
+          assertTrue(response.body().contains("picked up potion"), "Did not get the command response over HTTP");
+
+          response = post(port, "/batch", "[{\"player\": \"simon\", \"command\": \"inv\"}, {\"player\": \"simon\", \"command\": \"goto forest\"}]");
+          assertEquals(200, response.statusCode(), "Batch should succeed");
+          List<?> responses = (List<?>) ((Map<?, ?>) Json.parse(response.body())).get("responses");
+          assertEquals(2, responses.size(), "Batch should answer every command");
+          assertTrue(responses.get(0).toString().contains("potion"), "Batch responses out of order");
+          assertTrue(responses.get(1).toString().contains("forest"), "Batch responses out of order");
+
+          assertEquals(400, post(port, "/command", "{\"player\": 1}").statusCode(), "Bad request should be rejected");
+          assertEquals(400, post(port, "/command", "{\"player\": \"sion: goto forest\", \"command\": \"look\"}").statusCode(),
+                  "Player name with ':' should be rejected");
+          assertEquals(400, post(port, "/command", "{\"player\": \"sion\\nsimon\", \"command\": \"look\"}").statusCode(),
+                  "Player name with a line break should be rejected");
+          assertFalse(server.getMultiPlayerHandler().getPlayers().containsKey("sion"), "Player name was re-split into another player");
+      } finally {
+          gateway.close();
+      }
+  }
+
+  @Test
+  void testHttpGatewayStopsAccepting() throws Exception {
+      HttpGateway gateway = new HttpGateway(server, new ServerOptions());
+      int port = gateway.open(0);
+      try {
+          gateway.stopAccepting();
+          HttpResponse<String> response = post(port, "/command", "{\"player\": \"simon\", \"command\": \"get potion\"}");
+          assertEquals(503, response.statusCode(), "Gateway should refuse commands once it stopped accepting");
+          assertFalse(server.handleCommand("simon: inv").contains("potion"), "Refused command still ran");
+      } finally {
+          gateway.close();
+      }
+  }
+
+  private static void assertAsyncClientWorks(int port, boolean binary) {
+      assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+          try (AsyncGameClient client = new AsyncGameClient("localhost", port, 3, binary)) {
+              List<CompletableFuture<String>> looks = new ArrayList<>();
+              for (int i = 0; i < 300; i++) {
+                  looks.add(client.send("bot" + (i % 7), "look"));
+              }
+              for (CompletableFuture<String> look : looks) {
+                  assertTrue(look.get().toLowerCase().contains("log cabin"), "Async look got the wrong response");
+              }
+              // both are in flight before either is answered, so only per-player ordering keeps them in order
+              for (int i = 0; i < 5; i++) {
+                  CompletableFuture<String> get = client.send("simon", "get potion");
+                  CompletableFuture<String> inventory = client.send("simon", "inv");
+                  CompletableFuture<String> drop = client.send("simon", "drop potion");
+                  assertTrue(get.get().contains("potion"), "Did not pick up the potion");
+                  assertTrue(inventory.get().contains("potion"), "Commands from one player ran out of order");
+                  assertTrue(drop.get().contains("potion"), "Did not drop the potion");
+              }
+          }
+      });
+  }
+
+  @Test
+  void testAsyncClientOverText() throws IOException {
+      assertAsyncClientWorks(startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)), false);
+  }
+
+  @Test
+  void testAsyncClientOverBinary() throws IOException {
+      assertAsyncClientWorks(startThreadedServer(new ServerOptions().setSessionIdleTimeoutMillis(5000)), true);
+  }
+
+  @Test
+  void testAsyncClientRejectsNamesThatWouldSplit() throws Exception {
+      int port = startSelectorServer(new ServerOptions().setSessionIdleTimeoutMillis(5000));
+      try (AsyncGameClient client = new AsyncGameClient("localhost", port, 1, false)) {
+          assertTrue(client.send("sion: goto forest", "look").isCompletedExceptionally(), "Player name with ':' should be rejected");
+          assertTrue(client.send("simon", "look\nsion: goto forest").isCompletedExceptionally(), "Command with a line break should be rejected");
+          assertTrue(client.send("simon", "look").get().toLowerCase().contains("log cabin"), "Valid command after rejected ones failed");
+      }
+      assertFalse(server.getMultiPlayerHandler().getPlayers().containsKey("sion"), "Player name was re-split into another player");
+  }
+
+  // Idle players are written out and come back with their location and inventory on their next command
+  @Test
+  void testIdlePlayersArePassivated(@TempDir Path archive) {
+      server.setOptions(new ServerOptions().setPlayerIdleTimeoutMillis(60_000).setPlayerArchive(archive));
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("sion: look");
+      MultiPlayerHandler players = server.getMultiPlayerHandler();
+      assertEquals(2, players.passivateIdle(System.currentTimeMillis() + 120_000));
+      assertEquals(0, players.getActiveCount());
+      assertEquals(2, players.getPassivatedCount());
+
+      assertTrue(server.handleCommand("simon: inv").contains("axe"), "Inventory was lost while passivated");
+      assertTrue(server.handleCommand("simon: look").contains("You are at: A deep dark forest"), "Location was lost while passivated");
+      assertEquals(1, players.getActiveCount());
+      assertEquals(1, players.getPassivatedCount());
+      assertTrue(players.toString().contains("1 active, 1 passivated"));
+  }
+
+  // The sweep runs in the background, so idle players go even when nobody sends commands
+  @Test
+  void testIdlePlayersArePassivatedWithoutTraffic(@TempDir Path archive) {
+      server.setOptions(new ServerOptions().setPlayerIdleTimeoutMillis(100).setPlayerArchive(archive));
+      server.handleCommand("simon: get axe");
+      MultiPlayerHandler players = server.getMultiPlayerHandler();
+      assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+          while (players.getPassivatedCount() == 0) {
+              Thread.sleep(10);
+          }
+      }, "Idle player was never passivated");
+      assertEquals(0, players.getActiveCount());
+      assertTrue(server.handleCommand("simon: inv").contains("axe"), "Inventory was lost while passivated");
+      server.shutdown(Duration.ofMillis(100));
+  }
+
+  // A passivated player's record keeps its rows, even when another copy of the item is consumed
+  @Test
+  void testPassivatedItemsKeepTheirRows(@TempDir Path archive) {
+      server.setOptions(new ServerOptions().setPlayerIdleTimeoutMillis(60_000).setPlayerArchive(archive));
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: chop tree");
+      assertTrue(server.handleCommand("simon: inv").contains("log"), "Chopping should put a log in the pack");
+      assertEquals(1, server.getMultiPlayerHandler().passivateIdle(System.currentTimeMillis() + 120_000));
+
+      server.handleCommand("sion: goto forest");
+      server.handleCommand("sion: get log");
+      server.handleCommand("sion: goto riverbank");
+      server.handleCommand("sion: bridge river");
+      assertFalse(server.handleCommand("sion: inv").contains("log"), "Bridging should consume sion's log");
+
+      WorldStore world = server.getWorld();
+      int impostor = world.add("impostor", "A stranger", WorldStore.ARTEFACT);
+      assertEquals("impostor", world.name(impostor));
+      assertTrue(server.handleCommand("simon: inv").contains("log"), "Passivated player's log row was reused");
+  }
+
+  // Rewriting a record left behind by a failed take must not count the player twice
+  @Test
+  void testPlayerArchiveCountsEachPlayerOnce(@TempDir Path directory) throws IOException {
+      PlayerArchive archive = new PlayerArchive(directory);
+      archive.write(new PlayerArchive.Record("simon", 0, 3, new int[] {1, 2}));
+      archive.write(new PlayerArchive.Record("simon", 0, 2, new int[] {1}));
+      assertEquals(1, archive.size());
+      assertEquals(2, archive.take("simon").getHealth(), "Rewritten record was not the latest one");
+      assertEquals(0, archive.size());
+  }
+
+}
@@ -144,4 +144,27 @@ class qtyTests {
 
     }
 
+    // Concurrent clamped updates on the primitive stats store must not lose or overshoot
+    @Test
+    void testPlayerStatsAtomicUpdates() throws InterruptedException {
+        PlayerStats stats = new PlayerStats();
+        stats.ensurePlayer(300);
+        stats.set(300, PlayerStats.HEALTH, 0);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    stats.addClamped(300, PlayerStats.HEALTH, 1, 0, Integer.MAX_VALUE);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, stats.get(300, PlayerStats.HEALTH), "Lost updates");
+        assertEquals(3, stats.addClamped(300, PlayerStats.HEALTH, 5, 0, 3), "Not clamped to the maximum");
+        assertEquals(0, stats.get(0, PlayerStats.HEALTH), "Other players should be untouched");
+    }
+
 }